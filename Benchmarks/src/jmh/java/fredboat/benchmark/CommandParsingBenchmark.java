@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.benchmark;
+
+import fredboat.commandmeta.CommandRegistry;
+import fredboat.commandmeta.CommandTokenizer;
+import fredboat.commandmeta.CommandTokens;
+import fredboat.commandmeta.abs.Command;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The part of CommandContextParser#parse that doesn't need a guild: tokenizing the message and looking up the
+ * command, plus splitting the arguments, which commands do right after.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandParsingBenchmark {
+
+    private static final String BOT_ID = "152691313123393536";
+    private static final String DEFAULT_PREFIX = ";;";
+    private static final String CUSTOM_PREFIX = "!";
+
+    //default prefix, custom prefix, mention, mention with nickname and extra whitespace, and plain chatter
+    @Param({
+            ";;music7 never gonna give you up",
+            "!fun14a",
+            "<@152691313123393536> admin3 1 2 3",
+            "<@!152691313123393536>   util5b   some  spaced\targuments  ",
+            "is anyone up for a game tonight?"
+    })
+    public String message;
+
+    @Setup
+    public void setUp() {
+        CommandRegistryBenchmark.registerCommands();
+    }
+
+    @Benchmark
+    public CommandTokens tokenize() {
+        return CommandTokenizer.INSTANCE.tokenize(message, BOT_ID, DEFAULT_PREFIX, () -> CUSTOM_PREFIX);
+    }
+
+    @Benchmark
+    public Command tokenizeAndFind() {
+        CommandTokens tokens = CommandTokenizer.INSTANCE.tokenize(message, BOT_ID, DEFAULT_PREFIX, () -> CUSTOM_PREFIX);
+        if (tokens == null) {
+            return null;
+        }
+        return CommandRegistry.findCommand(tokens.getContent(), tokens.getTriggerStart(), tokens.getTriggerEnd());
+    }
+
+    @Benchmark
+    public String[] tokenizeAndSplitArgs() {
+        CommandTokens tokens = CommandTokenizer.INSTANCE.tokenize(message, BOT_ID, DEFAULT_PREFIX, () -> CUSTOM_PREFIX);
+        if (tokens == null) {
+            return null;
+        }
+        return tokens.getArgs();
+    }
+}
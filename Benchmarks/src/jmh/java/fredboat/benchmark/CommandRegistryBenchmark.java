@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.benchmark;
+
+import fredboat.commandmeta.CommandRegistry;
+import fredboat.commandmeta.abs.Command;
+import fredboat.commandmeta.abs.CommandContext;
+import fredboat.commandmeta.abs.JCommand;
+import fredboat.definitions.Module;
+import fredboat.messaging.internal.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command lookup through the prebuilt index versus scanning the registry of every module, which is how lookups were
+ * done before the index existed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandRegistryBenchmark {
+
+    private static final int COMMANDS_PER_MODULE = 15;
+
+    //a hit in the first registered module, a mixed case hit, a hit in the last module, and a miss
+    @Param({"admin0", "Music7", "fun14a", "nosuchcommand"})
+    public String trigger;
+
+    @Setup
+    public void setUp() {
+        registerCommands();
+    }
+
+    /**
+     * Fills the registry of every module with commands named after the module, like admin0, admin0a, admin0b
+     */
+    static void registerCommands() {
+        for (Module module : Module.values()) {
+            CommandRegistry registry = new CommandRegistry(module);
+            String base = module.name().toLowerCase();
+            for (int i = 0; i < COMMANDS_PER_MODULE; i++) {
+                registry.registerCommand(new NoopCommand(base + i, base + i + "a", base + i + "b"));
+            }
+        }
+        CommandRegistry.rebuildIndex();
+    }
+
+    @Benchmark
+    public Command index() {
+        return CommandRegistry.findCommand(trigger);
+    }
+
+    @Benchmark
+    public Command moduleScan() {
+        String name = trigger.toLowerCase();
+        return Arrays.stream(Module.values())
+                .map(CommandRegistry::getCommandModule)
+                .map(cr -> cr.getCommand(name))
+                .filter(Objects::nonNull)
+                .findAny()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public Command indexRegion() {
+        return CommandRegistry.findCommand(trigger, 0, trigger.length());
+    }
+
+    static class NoopCommand extends JCommand {
+
+        NoopCommand(String name, String... aliases) {
+            super(name, aliases);
+        }
+
+        @Override
+        public void onInvoke(@Nonnull CommandContext context) {
+        }
+
+        @Nonnull
+        @Override
+        public String help(@Nonnull Context context) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import fredboat.feature.I18n;
+import fredboat.feature.MessageTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting of some of the most common replies: precompiled templates versus MessageFormat, which Context used, and
+ * the replace loop that AudioTrackContext used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class I18nBenchmark {
+
+    //track queued, track announced, permissions too low
+    @Param({"loadSingleTrack", "trackAnnounce", "cmdPermsTooLow"})
+    public String key;
+
+    private final Object[] params = {"Rick Astley - Never Gonna Give You Up (Official Music Video)", "Napster"};
+    private String pattern;
+    private MessageTemplate template;
+
+    @Setup
+    public void setUp() {
+        pattern = I18n.DEFAULT.getProps().getString(key);
+        template = I18n.DEFAULT.getTemplate(key);
+    }
+
+    @Benchmark
+    public String template() {
+        return template.format(params);
+    }
+
+    @Benchmark
+    public String templateLookup() {
+        return I18n.DEFAULT.format(key, params);
+    }
+
+    @Benchmark
+    public String messageFormat() {
+        return MessageFormat.format(I18n.DEFAULT.getProps().getString(key), params);
+    }
+
+    @Benchmark
+    public String replaceLoop() {
+        String str = pattern;
+        for (int i = 0; i < params.length; i++) {
+            str = str.replace("{" + i + "}", params[i].toString());
+        }
+        return str;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import fredboat.util.ratelimit.Ratelimit;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ratelimit checks from several threads at once, with the GCRA based Ratelimit versus the timestamp lists it used
+ * before. Few ids means a lot of contention on the same ids, many ids means a lot of entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class RatelimitBenchmark {
+
+    @Param({"4", "10000"})
+    public int ids;
+
+    //requests per time span, the guildSongsAdded limit uses the most
+    @Param({"10", "1000"})
+    public int maxRequests;
+
+    private static final long TIME_SPAN = 10000;
+
+    private ExecutorService executor;
+    private Ratelimit gcra;
+    private TimestampRatelimit timestamps;
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        gcra = new Ratelimit("benchmark", executor, Collections.emptySet(), Ratelimit.Scope.USER,
+                maxRequests, TIME_SPAN, Object.class, context -> "");
+        timestamps = new TimestampRatelimit(maxRequests, TIME_SPAN);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public boolean gcra() {
+        return gcra.tryAcquire(ThreadLocalRandom.current().nextInt(ids), 1);
+    }
+
+    @Benchmark
+    public boolean timestampList() {
+        return timestamps.tryAcquire(ThreadLocalRandom.current().nextInt(ids), 1);
+    }
+
+    /**
+     * The algorithm Ratelimit used before, minus the context handling
+     */
+    private static class TimestampRatelimit {
+
+        private final LoadingCache<Long, Rate> rates;
+        private final long maxRequests;
+        private final long timeSpan;
+
+        TimestampRatelimit(long maxRequests, long timeSpan) {
+            this.rates = CacheBuilder.newBuilder()
+                    .recordStats()
+                    .expireAfterAccess(timeSpan, TimeUnit.MILLISECONDS)
+                    .build(CacheLoader.from(Rate::new));
+            this.maxRequests = maxRequests;
+            this.timeSpan = timeSpan;
+        }
+
+        boolean tryAcquire(long id, int weight) {
+            Rate rate = rates.getUnchecked(id);
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (rate) {
+                long now = System.currentTimeMillis();
+
+                long maxTimeStampsToClear = (now - rate.lastUpdated) * maxRequests / timeSpan;
+                long cleared = 0;
+                while (rate.timeStamps.size() > 0 && rate.timeStamps.getLong(0) + timeSpan < now && cleared < maxTimeStampsToClear) {
+                    rate.timeStamps.removeLong(0);
+                    cleared++;
+                }
+
+                rate.lastUpdated = now;
+                if (rate.timeStamps.size() < maxRequests) {
+                    for (int i = 0; i < weight; i++)
+                        rate.timeStamps.add(now);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static class Rate {
+            long lastUpdated = System.currentTimeMillis();
+            final LongArrayList timeStamps = new LongArrayList();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.benchmark;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import fredboat.db.transfer.SearchResult;
+import fredboat.db.transfer.SearchResultCodec;
+import org.apache.commons.lang3.SerializationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of cached search results. Decoded tracks are created lazily, so decoding is measured both
+ * for a result of which only the picked track is used, and for one of which all tracks are listed.
+ * The legacy java serialized format is measured alongside as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchResultCodecBenchmark {
+
+    //a page of search results, and a large playlist
+    @Param({"20", "500"})
+    public int size;
+
+    private AudioPlayerManager playerManager;
+    private AudioPlaylist playlist;
+    private byte[] encoded;
+    private byte[] legacyEncoded;
+
+    @Setup
+    public void setUp() {
+        playerManager = new DefaultAudioPlayerManager();
+        YoutubeAudioSourceManager youtube = new YoutubeAudioSourceManager();
+        playerManager.registerSourceManager(youtube);
+
+        List<AudioTrack> tracks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String identifier = String.format("dQw4w9Wg%03d", i);
+            tracks.add(new YoutubeAudioTrack(new AudioTrackInfo("Rick Astley - Never Gonna Give You Up " + i,
+                    "RickAstleyVEVO", 213000 + i, identifier, false,
+                    "https://www.youtube.com/watch?v=" + identifier), youtube));
+        }
+        playlist = new BasicAudioPlaylist("Search result for: never gonna give you up", tracks, null, true);
+        encoded = SearchResultCodec.encode(playerManager, playlist);
+        legacyEncoded = SerializationUtils.serialize(new SearchResult.SerializableAudioPlaylist(playerManager, playlist));
+    }
+
+    @TearDown
+    public void tearDown() {
+        playerManager.shutdown();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return SearchResultCodec.encode(playerManager, playlist);
+    }
+
+    @Benchmark
+    public AudioTrack decodePick() throws IOException {
+        return SearchResultCodec.decode(playerManager, encoded).getTracks().get(0);
+    }
+
+    @Benchmark
+    public long decodeAll() throws IOException {
+        long duration = 0;
+        for (AudioTrack track : SearchResultCodec.decode(playerManager, encoded).getTracks()) {
+            duration += track.getDuration();
+        }
+        return duration;
+    }
+
+    @Benchmark
+    public byte[] legacyEncode() {
+        return SerializationUtils.serialize(new SearchResult.SerializableAudioPlaylist(playerManager, playlist));
+    }
+
+    @Benchmark
+    public AudioTrack legacyDecodePick() {
+        SearchResult.SerializableAudioPlaylist sap = SerializationUtils.deserialize(legacyEncoded);
+        return sap.decode(playerManager).getTracks().get(0);
+    }
+
+    @Benchmark
+    public long legacyDecodeAll() {
+        SearchResult.SerializableAudioPlaylist sap = SerializationUtils.deserialize(legacyEncoded);
+        long duration = 0;
+        for (AudioTrack track : sap.decode(playerManager).getTracks()) {
+            duration += track.getDuration();
+        }
+        return duration;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.benchmark;
+
+import com.fredboat.sentinel.entities.RawGuild;
+import com.fredboat.sentinel.entities.RawMember;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import fredboat.audio.queue.AudioTrackContext;
+import fredboat.audio.queue.SimpleTrackProvider;
+import fredboat.sentinel.Guild;
+import fredboat.sentinel.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue operations of a large queue. Polling a shuffled queue sorts the whole queue, which is what makes big shuffled
+ * queues expensive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackProviderBenchmark {
+
+    @Param({"10000"})
+    public int tracks;
+
+    private List<AudioTrackContext> contexts;
+    private SimpleTrackProvider shuffled;
+
+    @Setup
+    public void setUp() {
+        //AudioTrackContexts only need the ids of their member and guild, skip everything that needs a running bot
+        long guildId = 174820236481134592L;
+        RawMember rawMember = new RawMember(166604053629894657L, "Napster", "Napster", "0001", guildId, false,
+                new ArrayList<>(), null);
+        Guild guild = new Guild(new RawGuild(guildId, "Benchmark", null, new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>(), null)) {};
+        Member member = new Member(guild, rawMember) {};
+
+        YoutubeAudioSourceManager youtube = new YoutubeAudioSourceManager();
+        contexts = new ArrayList<>(tracks);
+        for (int i = 0; i < tracks; i++) {
+            String identifier = String.format("dQw4w9Wg%03d", i % 1000);
+            contexts.add(new AudioTrackContext(new YoutubeAudioTrack(new AudioTrackInfo("Track " + i, "Author",
+                    213000, identifier, false, "https://www.youtube.com/watch?v=" + identifier), youtube), member, false));
+        }
+
+        shuffled = new SimpleTrackProvider();
+        shuffled.addAll(contexts);
+        shuffled.setShuffle(true);
+    }
+
+    @Benchmark
+    public SimpleTrackProvider addAll() {
+        SimpleTrackProvider provider = new SimpleTrackProvider();
+        for (AudioTrackContext context : contexts) {
+            provider.add(context);
+        }
+        return provider;
+    }
+
+    @Benchmark
+    public AudioTrackContext pollAll(FilledQueue queue) {
+        AudioTrackContext last = null;
+        AudioTrackContext next;
+        while ((next = queue.provider.provideAudioTrack()) != null) {
+            last = next;
+        }
+        return last;
+    }
+
+    @Benchmark
+    public AudioTrackContext pollShuffled() {
+        AudioTrackContext polled = shuffled.provideAudioTrack();
+        shuffled.add(polled); //keep the queue at its size
+        return polled;
+    }
+
+    @Benchmark
+    public AudioTrackContext reshuffle() {
+        shuffled.reshuffle();
+        return shuffled.peek();
+    }
+
+    @Benchmark
+    public List<AudioTrackContext> shuffledPage() {
+        shuffled.reshuffle();
+        return shuffled.getTracksInRange(0, 10);
+    }
+
+    @State(Scope.Thread)
+    public static class FilledQueue {
+        SimpleTrackProvider provider;
+
+        //an invocation polls the whole queue, which dwarfs the overhead of an invocation level setup
+        @Setup(Level.Invocation)
+        public void fill(TrackProviderBenchmark benchmark) {
+            provider = new SimpleTrackProvider();
+            provider.addAll(benchmark.contexts);
+        }
+    }
+}
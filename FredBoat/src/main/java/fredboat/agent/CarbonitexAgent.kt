@@ -26,12 +26,12 @@
 package fredboat.agent
 
 import com.fredboat.sentinel.entities.ShardStatus
+import fredboat.commandmeta.CommandScheduler
 import fredboat.config.property.AppConfig
 import fredboat.config.property.Credentials
 import fredboat.main.BotController
 import fredboat.util.SentinelCountingService
 import fredboat.util.rest.Http
-import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.reactive.awaitSingle
 import org.slf4j.LoggerFactory
@@ -44,11 +44,12 @@ import java.util.concurrent.atomic.AtomicInteger
 class CarbonitexAgent(
         private val credentials: Credentials,
         private val appConfig: AppConfig,
-        private val counting: SentinelCountingService
+        private val counting: SentinelCountingService,
+        private val commandScheduler: CommandScheduler
 ) : FredBoatAgent("carbonitex", 30, TimeUnit.MINUTES) {
 
     public override fun doRun() {
-        GlobalScope.launch {
+        commandScheduler.blockingScope.launch {
             sendStats()
         }
     }
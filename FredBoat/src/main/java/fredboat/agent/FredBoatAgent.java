@@ -25,24 +25,51 @@
 
 package fredboat.agent;
 
+import fredboat.feature.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public abstract class FredBoatAgent implements Runnable {
+/**
+ * Agents are triggered by a shared scheduler, but each run happens on a worker thread of its own, so a slow agent
+ * does not hold up the others. A run is skipped if the previous run of the same agent has not finished yet.
+ * Agents started with {@link #start(FredBoatAgent)} begin after their interval plus some jitter, so several nodes
+ * started at the same time don't run their agents in lockstep.
+ */
+public abstract class FredBoatAgent {
 
     private static final String IDLE_NAME = "idle agent worker thread";
     private static final String RUNNING_NAME = "%s agent worker thread";
 
+    private static final long MAX_JITTER_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     private static final Map<Class<? extends FredBoatAgent>, Long> LAST_RUN_TIME = new ConcurrentHashMap<>();
 
-    private static final ScheduledExecutorService AGENTS = Executors.newScheduledThreadPool(2, runnable -> {
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    //only triggers runs, the runs themselves happen on the workers
+    private static final ScheduledExecutorService AGENTS = Executors.newScheduledThreadPool(1, runnable -> {
+        Thread thread = new Thread(runnable, "agent scheduler thread");
+        thread.setPriority(4);
+        return thread;
+    });
+
+    //at most one run per agent at a time, so this is bounded by the amount of agents
+    private static final ThreadPoolExecutor WORKERS = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
         Thread thread = new Thread(runnable, IDLE_NAME);
         thread.setPriority(4);
         return thread;
@@ -52,13 +79,25 @@ public abstract class FredBoatAgent implements Runnable {
         return AGENTS;
     }
 
+    public static ThreadPoolExecutor getWorkers() {
+        return WORKERS;
+    }
+
     //only one of each agent, non-static is fine
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    private final String agentName;
     private final String name;
     private final long millisToSleep;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    //0 for no budget
+    private long cpuBudgetNanos = 0;
+    //cpu time of the worker thread when the current run started, runs never overlap
+    private long runStartCpuNanos = 0;
 
     protected FredBoatAgent(String name, long millisToSleep) {
+        this.agentName = name;
         this.name = String.format(RUNNING_NAME, name);
         this.millisToSleep = millisToSleep;
     }
@@ -67,30 +106,92 @@ public abstract class FredBoatAgent implements Runnable {
         this(name, unitToSleep.toMillis(timeToSleep));
     }
 
-    @Override
-    public final void run() {
+    /**
+     * Limit the cpu time a single run of this agent should take. Agents can't be interrupted, so the limit is up to
+     * the agent to honor by checking {@link #isCpuBudgetExceeded()} and ending the run early. Runs that exceed their
+     * budget are counted.
+     */
+    protected final void setCpuBudget(long time, TimeUnit unit) {
+        this.cpuBudgetNanos = unit.toNanos(time);
+    }
+
+    /**
+     * @return true if the current run has used up the cpu budget of this agent
+     */
+    protected final boolean isCpuBudgetExceeded() {
+        return cpuBudgetNanos > 0 && cpuTimeOfRun() > cpuBudgetNanos;
+    }
+
+    /**
+     * Runs the agent once right away, in addition to its scheduled runs. Like those, it is skipped if the previous run
+     * has not finished yet.
+     */
+    public final void runNow() {
+        trigger();
+    }
+
+    //only ever called through trigger(), which makes sure that runs don't overlap
+    private void run() {
         LAST_RUN_TIME.put(this.getClass(), System.currentTimeMillis());
+        long start = System.nanoTime();
+        runStartCpuNanos = currentThreadCpuTime();
         try {
             Thread.currentThread().setName(name);
             doRun();
         } catch (Throwable t) {
+            Metrics.agentRunFailures.labels(agentName).inc();
             log.warn("Whoa! Unhandled throwable!", t);
         } finally {
             Thread.currentThread().setName(IDLE_NAME);
+            Metrics.agentRunDuration.labels(agentName).observe((System.nanoTime() - start) / 1_000_000_000.0);
+            if (cpuBudgetNanos > 0 && cpuTimeOfRun() > cpuBudgetNanos) {
+                Metrics.agentCpuBudgetsExceeded.labels(agentName).inc();
+            }
         }
     }
 
     protected abstract void doRun();
 
+    private void trigger() {
+        if (!running.compareAndSet(false, true)) {
+            Metrics.agentRunsSkipped.labels(agentName).inc();
+            log.debug("Skipping a run of {}, the previous one is still running", agentName);
+            return;
+        }
+        try {
+            WORKERS.execute(() -> {
+                try {
+                    run();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false); //shutting down
+        }
+    }
+
+    private long cpuTimeOfRun() {
+        return currentThreadCpuTime() - runStartCpuNanos;
+    }
+
+    private static long currentThreadCpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+    }
+
     public static void start(FredBoatAgent agent) {
-        LAST_RUN_TIME.put(agent.getClass(), 0L);
-        AGENTS.scheduleAtFixedRate(agent, agent.millisToSleep, agent.millisToSleep, TimeUnit.MILLISECONDS);
+        long jitter = ThreadLocalRandom.current().nextLong(Math.max(1, Math.min(agent.millisToSleep / 10, MAX_JITTER_MILLIS)));
+        schedule(agent, agent.millisToSleep + jitter);
     }
 
     //start the agent without a delay
     public static void startNow(FredBoatAgent agent) {
+        schedule(agent, 0L);
+    }
+
+    private static void schedule(FredBoatAgent agent, long initialDelayMillis) {
         LAST_RUN_TIME.put(agent.getClass(), 0L);
-        AGENTS.scheduleAtFixedRate(agent, 0L, agent.millisToSleep, TimeUnit.MILLISECONDS);
+        AGENTS.scheduleAtFixedRate(agent::trigger, initialDelayMillis, agent.millisToSleep, TimeUnit.MILLISECONDS);
     }
 
     public static Map<Class<? extends FredBoatAgent>, Long> getLastRunTimes() {
@@ -99,5 +200,6 @@ public abstract class FredBoatAgent implements Runnable {
 
     public static void shutdown() {
         AGENTS.shutdown();
+        WORKERS.shutdown();
     }
 }
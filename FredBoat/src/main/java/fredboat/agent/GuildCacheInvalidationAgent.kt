@@ -3,6 +3,9 @@ package fredboat.agent
 import com.fredboat.sentinel.entities.GuildUnsubscribeRequest
 import fredboat.audio.lavalink.SentinelLavalink
 import fredboat.audio.player.PlayerRegistry
+import fredboat.command.config.PrefixCommand
+import fredboat.feature.metrics.Metrics
+import fredboat.perms.PermissionLevelCache
 import fredboat.sentinel.GuildCache
 import fredboat.sentinel.InternalGuild
 import lavalink.client.io.Link
@@ -16,10 +19,9 @@ class GuildCacheInvalidationAgent(
         val guildCache: GuildCache,
         private val playerRegistry: PlayerRegistry,
         private val lavalink: SentinelLavalink
-) : FredBoatAgent("cache-invalidator", 5, TimeUnit.MINUTES) {
+) : FredBoatAgent("cache-invalidator", 30, TimeUnit.SECONDS) {
 
     companion object {
-        private const val TIMEOUT_MILLIS: Long = 10 * 60 * 1000 // 10 minutes
         private val log: Logger = LoggerFactory.getLogger(GuildCacheInvalidationAgent::class.java)
         lateinit var INSTANCE: GuildCacheInvalidationAgent
     }
@@ -27,35 +29,76 @@ class GuildCacheInvalidationAgent(
     init {
         @Suppress("LeakingThis")
         INSTANCE = this
+        setCpuBudget(10, TimeUnit.SECONDS)
     }
 
+    /**
+     * Only looks at the guilds whose idle deadline passed since the last run, instead of all cached guilds.
+     */
     override fun doRun() {
-        val keysToRemove = mutableListOf<InternalGuild>()
-        guildCache.cache.forEach { _, guild ->
-            if (!guild.shouldInvalidate()) return@forEach
-            keysToRemove.add(guild)
+        val now = System.currentTimeMillis()
+        var invalidated = 0
+        for (guild in guildCache.pollIdle()) {
+            try {
+                if (isCpuBudgetExceeded()) {
+                    // Check the rest on the next run
+                    guildCache.scheduleIdleCheck(guild, now)
+                    continue
+                }
+                val lastUsed = guild.lastUsed
+                when {
+                    lastUsed + GuildCache.IDLE_TIMEOUT_MILLIS > now ->
+                        guildCache.scheduleIdleCheck(guild, lastUsed + GuildCache.IDLE_TIMEOUT_MILLIS)
+                    guild.isInUse() -> {
+                        // Keep the prefix of guilds that we hold on to warm, so their messages never wait for it
+                        PrefixCommand.peekPrefix(guild.id)
+                        guildCache.scheduleIdleCheck(guild, now + GuildCache.IDLE_TIMEOUT_MILLIS)
+                    }
+                    else -> {
+                        invalidateGuild(guild)
+                        invalidated++
+                    }
+                }
+            } catch (e: Exception) {
+                log.error("Exception while invalidating guild $guild", e)
+            }
         }
-        keysToRemove.forEach {
+        Metrics.guildCacheEvictions.labels("idle").inc(invalidated.toDouble())
+
+        evictOverBudget()
+    }
+
+    /**
+     * Invalidates the least recently used guilds that are not in use until the guild cache fits its budget.
+     */
+    fun evictOverBudget() {
+        if (!guildCache.isOverBudget) return
+
+        val victims = guildCache.takeOverBudget { !it.isInUse() }
+        victims.forEach {
             try {
                 invalidateGuild(it)
             } catch (e: Exception) {
-                log.error("Exception while invalidating guild $it")
+                log.error("Exception while invalidating guild $it", e)
             }
         }
+        Metrics.guildCacheEvictions.labels("budget").inc(victims.size.toDouble())
+        if (guildCache.isOverBudget) {
+            log.warn("Guild cache is over its budget with {} guilds and {} entities, but the rest of it is in use",
+                    guildCache.cache.size, guildCache.entityCount)
+        } else if (victims.isNotEmpty()) {
+            log.info("Evicted {} guilds to keep the guild cache within its budget", victims.size)
+        }
     }
 
-    private fun InternalGuild.shouldInvalidate(): Boolean {
-        // Has this guild been used recently?
-        if (lastUsed + TIMEOUT_MILLIS > System.currentTimeMillis()) return false
-
+    private fun InternalGuild.isInUse(): Boolean {
         // Are we connected to voice?
-        if (link.state == Link.State.CONNECTED) return false
+        if (existingLink?.state == Link.State.CONNECTED) return true
 
         // Are we playing music?
-        if (this.guildPlayer?.isPlaying == true) return false
+        if (this.guildPlayer?.isPlaying == true) return true
 
-        // If not then invalidate
-        return true
+        return false
     }
 
     fun invalidateGuild(guild: InternalGuild) {
@@ -66,7 +109,9 @@ class GuildCacheInvalidationAgent(
             log.error("Got exception when invaliding GuildPlayer and Link for {}", guild)
         }
         guild.sentinel.sendAndForget(guild.routingKey, GuildUnsubscribeRequest(guild.id))
-        guildCache.cache.remove(guild.id)
+        guildCache.remove(guild.id)
+        PrefixCommand.CUSTOM_PREFIXES.invalidate(guild.id)
+        PermissionLevelCache.invalidateGuild(guild.id)
     }
 
-}
\ No newline at end of file
+}
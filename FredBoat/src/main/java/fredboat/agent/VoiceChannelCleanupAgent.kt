@@ -25,99 +25,37 @@
 
 package fredboat.agent
 
-import fredboat.audio.player.PlayerRegistry
-import fredboat.command.music.control.VoteSkipCommand
-import fredboat.feature.metrics.Metrics
-import fredboat.sentinel.GuildCache
-import fredboat.sentinel.VoiceChannel
-import lavalink.client.io.Link
+import fredboat.audio.player.VoiceIdleTracker
 import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Controller
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicInteger
 
+/**
+ * Disconnects idle voice connections once the [VoiceIdleTracker] says they are due. Every now and then the tracker
+ * is also asked to look over all our voice connections, in case it missed some events.
+ */
 @Controller
 class VoiceChannelCleanupAgent(
-        private val playerRegistry: PlayerRegistry,
-        private val guildCache: GuildCache
-) : FredBoatAgent("voice-cleanup", 10, TimeUnit.MINUTES) {
+        private val idleTracker: VoiceIdleTracker
+) : FredBoatAgent("voice-cleanup", 30, TimeUnit.SECONDS) {
 
     companion object {
         private val log = LoggerFactory.getLogger(VoiceChannelCleanupAgent::class.java)
-        private const val UNUSED_CLEANUP_THRESHOLD = 60000 * 60 // Effective when users are in the VC, but the player is not playing
+        private const val RECONCILE_EVERY_RUNS = 20 // every 10 minutes
     }
 
-    private val vcLastUsed = mutableMapOf<Long, Long>()
+    private var runs = 0L
 
     public override fun doRun() {
         try {
-            cleanup()
+            if (runs++ % RECONCILE_EVERY_RUNS == 0L) {
+                idleTracker.reconcile()
+                log.debug("Tracking {} idle voice connections", idleTracker.idleCount)
+            }
+            idleTracker.expire()
         } catch (e: Exception) {
             log.error("Caught an exception while trying to clean up voice channels!", e)
         }
-
-    }
-
-    private fun cleanup() {
-        log.info("Checking guilds for stale voice connections.")
-
-        val totalGuilds = AtomicInteger(0)
-        val totalVcs = AtomicInteger(0)
-        val closedVcs = AtomicInteger(0)
-
-        guildCache.cache.forEach { _, guild ->
-            try {
-                totalGuilds.incrementAndGet()
-                val link = guild.existingLink ?: return@forEach
-                val vcId = link.channel?.toLong()
-                val vc = vcId?.let { guild.getVoiceChannel(it) }
-                if (guild.selfPresent
-                        && link.state != Link.State.NOT_CONNECTED) {
-
-                    totalVcs.incrementAndGet()
-
-                    if (vc != null && getHumanMembersInVC(vc).isEmpty()) {
-                        closedVcs.incrementAndGet()
-                        VoteSkipCommand.guildSkipVotes.remove(guild.id)
-                        link.disconnect()
-                        vcLastUsed.remove(vcId)
-                    } else if (vc != null && isBeingUsed(vc)) {
-                        vcLastUsed[vcId] = System.currentTimeMillis()
-                    } else {
-                        // Not being used! But there are users in te VC. Check if we've been here for a while.
-
-                        vcId?.let {
-                            if (!vcLastUsed.containsKey(vcId)) {
-                                vcLastUsed[vcId] = System.currentTimeMillis()
-                            }
-                        }
-
-                        val lastUsed: Long? = vcLastUsed[vcId] // Null if vcId is
-
-                        if (lastUsed == null || System.currentTimeMillis() - lastUsed > UNUSED_CLEANUP_THRESHOLD) {
-                            closedVcs.incrementAndGet()
-                            guild.existingLink?.disconnect()
-                            vcId.let { vcLastUsed.remove(it) }
-                        }
-                    }
-                }
-            } catch (e: Exception) {
-                log.error("Failed to check guild {} for stale voice connections", guild.id, e)
-            }
-        }
-
-        log.info("Checked {} guilds for stale voice connections.", totalGuilds.get())
-        log.info("Closed {} of {} voice connections.", closedVcs.get(), totalVcs.get())
-        Metrics.voiceChannelsCleanedUp.inc(closedVcs.get().toDouble())
-    }
-
-    private fun getHumanMembersInVC(vc: VoiceChannel) =
-            vc.members.flatMap { if(!it.isBot) listOf(it) else emptyList() }
-
-    private fun isBeingUsed(vc: VoiceChannel): Boolean {
-        val guildPlayer = playerRegistry.getExisting(vc.guild)
-
-        return guildPlayer != null && guildPlayer.isPlaying
     }
 
 }
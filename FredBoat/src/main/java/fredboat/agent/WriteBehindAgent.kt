@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.agent
+
+import fredboat.db.rest.CachedRestService
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Controller
+import java.util.concurrent.TimeUnit
+import javax.annotation.PreDestroy
+
+/**
+ * Flushes the deferred merges of our cached rest services to the backend.
+ */
+@Controller
+class WriteBehindAgent(
+        private val services: List<CachedRestService<*, *>>
+) : FredBoatAgent("write-behind", 2, TimeUnit.SECONDS) {
+
+    companion object {
+        private val log = LoggerFactory.getLogger(WriteBehindAgent::class.java)
+        private const val BATCH_SIZE = 100
+    }
+
+    override fun doRun() {
+        services.forEach {
+            try {
+                it.flushPendingMerges(BATCH_SIZE)
+            } catch (e: Exception) {
+                log.error("Exception while flushing pending merges of {}", it.javaClass.simpleName, e)
+            }
+        }
+    }
+
+    /**
+     * Write everything that is still pending before the application context goes away.
+     */
+    @PreDestroy
+    fun flushAll() {
+        services.forEach {
+            var flushed: Int
+            do {
+                flushed = it.flushPendingMerges(Int.MAX_VALUE)
+            } while (flushed > 0 && it.pendingMergesCount > 0)
+
+            if (it.pendingMergesCount > 0) {
+                log.warn("Shutting down with {} unflushed merges in {}", it.pendingMergesCount, it.javaClass.simpleName)
+            }
+        }
+    }
+}
@@ -24,43 +24,71 @@
 
 package fredboat.api;
 
+import fredboat.feature.metrics.Metrics;
+import io.prometheus.client.Collector.MetricFamilySamples;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.exporter.common.TextFormat;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by napster on 18.10.17.
  * <p>
  * Used to expose the prometheus metrics with a reactive web server. Some code copied from prometheus own MetricsServlet
+ * <p>
+ * Samples are collected at most once per {@link #SNAPSHOT_TTL_MILLIS}, so that scrapes arriving at the same time share
+ * one collection pass. Each scrape then streams the shared samples into its response in chunks, gzipped on the fly if
+ * asked for, so the rendered exposition is never held in memory as a whole.
  */
 @RestController
 @RequestMapping("/metrics")
 public class MetricsController {
 
+    private static final long SNAPSHOT_TTL_MILLIS = 1000;
+    private static final MediaType CONTENT_TYPE = MediaType.parseMediaType(TextFormat.CONTENT_TYPE_004);
+
     private CollectorRegistry registry;
 
+    @Nullable
+    private volatile Snapshot snapshot;
+    private final Object snapshotLock = new Object();
+
     public MetricsController() {
         registry = CollectorRegistry.defaultRegistry;
     }
 
-    @GetMapping(produces = TextFormat.CONTENT_TYPE_004)
-    public Mono<String> getMetrics(@RequestParam(name = "name[]", required = false) String[] includedParam) {
-        return Mono.fromCallable(() -> buildAnswer(includedParam));
-    }
+    @GetMapping
+    public Mono<Void> getMetrics(@RequestParam(name = "name[]", required = false) String[] includedParam,
+                                 ServerHttpRequest request, ServerHttpResponse response) {
+        String acceptEncoding = request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
 
-    private String buildAnswer(String[] includedParam) throws IOException {
         Set<String> params;
         if (includedParam == null) {
             params = Collections.emptySet();
@@ -68,14 +96,139 @@ public class MetricsController {
             params = new HashSet<>(Arrays.asList(includedParam));
         }
 
-        Writer writer = new StringWriter();
-        try {
-            TextFormat.write004(writer, registry.filteredMetricFamilySamples(params));
-            writer.flush();
-        } finally {
-            writer.close();
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(CONTENT_TYPE);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        Flux<DataBuffer> body = Flux.<DataBuffer, Exposition>generate(
+                () -> new Exposition(getSnapshot().families, params, gzip),
+                (exposition, sink) -> {
+                    try {
+                        byte[] chunk = exposition.next();
+                        if (chunk == null) {
+                            sink.complete();
+                        } else {
+                            sink.next(bufferFactory.wrap(chunk));
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                    return exposition;
+                },
+                Exposition::close)
+                .subscribeOn(Schedulers.elastic()); //collecting may block, keep it off the event loop
+
+        return response.writeWith(body);
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && !current.isExpired()) {
+            return current;
+        }
+        //scrapes that arrive while a collection is in progress wait for it instead of collecting themselves
+        synchronized (snapshotLock) {
+            current = snapshot;
+            if (current == null || current.isExpired()) {
+                long start = System.nanoTime();
+                current = new Snapshot(Collections.list(registry.metricFamilySamples()));
+                Metrics.metricsCollectionDuration.labels("registry").observe((System.nanoTime() - start) / 1_000_000_000.0);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private static class Snapshot {
+        private final long createdAt = System.currentTimeMillis();
+        final List<MetricFamilySamples> families;
+
+        Snapshot(List<MetricFamilySamples> families) {
+            this.families = families;
         }
 
-        return writer.toString();
+        boolean isExpired() {
+            return System.currentTimeMillis() - createdAt > SNAPSHOT_TTL_MILLIS;
+        }
+    }
+
+    /**
+     * Renders metric families in chunks of roughly {@link #CHUNK_SIZE} bytes.
+     */
+    private static class Exposition {
+
+        private static final int CHUNK_SIZE = 16 * 1024;
+
+        private final Iterator<MetricFamilySamples> families;
+        private final Set<String> includedNames;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(2 * CHUNK_SIZE);
+        private final Writer writer;
+        private boolean done = false;
+
+        /**
+         * @param includedNames only samples with these names are rendered, all of them if it is empty
+         */
+        Exposition(List<MetricFamilySamples> families, Set<String> includedNames, boolean gzip) throws IOException {
+            this.families = families.iterator();
+            this.includedNames = includedNames;
+            this.writer = new OutputStreamWriter(gzip ? new GZIPOutputStream(pending) : pending, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the next chunk of the exposition, or null if all of it has been returned
+         */
+        @Nullable
+        byte[] next() throws IOException {
+            while (!done && pending.size() < CHUNK_SIZE) {
+                if (!families.hasNext()) {
+                    writer.close(); //flushes what is buffered, and writes the gzip trailer
+                    done = true;
+                    break;
+                }
+                MetricFamilySamples family = filter(families.next());
+                if (family != null) {
+                    TextFormat.write004(writer, Collections.enumeration(Collections.singletonList(family)));
+                }
+            }
+            if (done && pending.size() == 0) {
+                return null;
+            }
+            byte[] chunk = pending.toByteArray();
+            pending.reset();
+            return chunk;
+        }
+
+        /**
+         * Same filtering as {@link CollectorRegistry#filteredMetricFamilySamples(Set)}.
+         *
+         * @return the family with only the included samples, or null if none of them are included
+         */
+        @Nullable
+        private MetricFamilySamples filter(MetricFamilySamples family) {
+            if (includedNames.isEmpty()) {
+                return family;
+            }
+            List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (includedNames.contains(sample.name)) {
+                    samples.add(sample);
+                }
+            }
+            return samples.isEmpty() ? null : new MetricFamilySamples(family.name, family.type, family.help, samples);
+        }
+
+        void close() {
+            if (!done) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    //the scrape was cancelled or failed, nobody is going to read the rest
+                }
+            }
+        }
     }
 }
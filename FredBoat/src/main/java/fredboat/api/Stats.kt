@@ -25,12 +25,9 @@
 
 package fredboat.api
 
-import fredboat.audio.player.PlayerRegistry
-import fredboat.main.getBotController
-import fredboat.util.SentinelCountingService
-import org.json.JSONArray
-import org.json.JSONObject
+import org.springframework.http.HttpHeaders
 import org.springframework.http.MediaType
+import org.springframework.http.ResponseEntity
 import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.RequestMapping
 import org.springframework.web.bind.annotation.RestController
@@ -38,46 +35,15 @@ import reactor.core.publisher.Mono
 
 @RestController
 @RequestMapping("/stats")
-class Stats(
-        private val sentinelCountingService: SentinelCountingService,
-        private val playerRegistry: PlayerRegistry
-) {
+class Stats(private val statsSnapshotService: StatsSnapshotService) {
 
+    /**
+     * Serves the latest stats snapshot. The age of its oldest count is given in seconds in the Age header.
+     */
     @GetMapping(produces = [MediaType.APPLICATION_JSON_VALUE])
-    fun getStats(): Mono<String> {
-
-        lateinit var counts: SentinelCountingService.Counts
-        var uniqueUsersCount = -1
-        val countsMono = sentinelCountingService.getCounts().doOnSuccess { counts = it }
-        val usersMono = sentinelCountingService.getUniqueUserCount().doOnSuccess { uniqueUsersCount = it }
-
-        val responseMono = Mono.create<String> {
-            val root = JSONObject()
-            val a = JSONArray()
-
-            counts.shards.forEach { shard ->
-                val fbStats = JSONObject()
-                fbStats.put("id", shard.shard.id)
-                        .put("guilds", shard.guilds)
-                        .put("users", shard.users)
-                        .put("status", shard.shard.status)
-
-                a.put(fbStats)
-            }
-
-            val g = JSONObject()
-            g.put("playingPlayers", playerRegistry.playingCount())
-                    .put("totalPlayers", playerRegistry.totalCount())
-                    .put("distribution", getBotController().appConfig.distribution)
-                    .put("guilds", counts.guilds)
-                    .put("users", uniqueUsersCount)
-
-            root.put("shards", a)
-            root.put("global", g)
-
-            it.success(root.toString())
-        }
-
-        return countsMono.and(usersMono).then(responseMono)
+    fun getStats(): Mono<ResponseEntity<String>> = statsSnapshotService.get().map {
+        ResponseEntity.ok()
+                .header(HttpHeaders.AGE, (it.ageMillis / 1000).toString())
+                .body(it.json)
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.api
+
+import fredboat.agent.StatsAgent
+import fredboat.audio.player.PlayerRegistry
+import fredboat.config.property.AppConfig
+import fredboat.util.SentinelCountingService
+import org.json.JSONArray
+import org.json.JSONObject
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Service
+import reactor.core.publisher.Mono
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Keeps a rendered snapshot of the public stats, so serving them does not ask every Sentinel for its counts. The
+ * snapshot is refreshed every minute by the [StatsAgent]. Concurrent refreshes share the same requests to Sentinel.
+ */
+@Service
+class StatsSnapshotService(
+        private val sentinelCountingService: SentinelCountingService,
+        private val playerRegistry: PlayerRegistry,
+        private val appConfig: AppConfig,
+        statsAgent: StatsAgent
+) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(StatsSnapshotService::class.java)
+        /** Snapshots older than this are refreshed when requested, in case the agent fell behind */
+        private val MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(3)
+    }
+
+    /**
+     * @param renderedAt when the snapshot was rendered
+     * @param takenAt when the oldest of the counts in it was taken, they are cached for up to 10 minutes
+     */
+    class Snapshot(val json: String, val renderedAt: Long, val takenAt: Long) {
+        /** Age of the oldest data in the snapshot */
+        val ageMillis: Long
+            get() = System.currentTimeMillis() - takenAt
+    }
+
+    @Volatile
+    private var snapshot: Snapshot? = null
+    private val pendingRefresh = AtomicReference<Mono<Snapshot>?>()
+
+    init {
+        statsAgent.addAction(StatsAgent.ActionAdapter("public stats snapshot", intervalMinutes = 1) {
+            refresh()
+        })
+    }
+
+    /**
+     * @return the latest snapshot right away, or the first one once it has been taken
+     */
+    fun get(): Mono<Snapshot> {
+        val current = snapshot ?: return refresh()
+        if (System.currentTimeMillis() - current.renderedAt > MAX_AGE_MILLIS) refresh()
+        return Mono.just(current)
+    }
+
+    /**
+     * Starts taking a new snapshot, unless one is being taken already.
+     *
+     * @return the new snapshot, once it is taken
+     */
+    fun refresh(): Mono<Snapshot> {
+        while (true) {
+            pendingRefresh.get()?.let { return it }
+
+            lateinit var refresh: Mono<Snapshot>
+            refresh = Mono.zip(sentinelCountingService.getCounts(), sentinelCountingService.getUniqueUserCount())
+                    .map {
+                        render(it.t1, it.t2, sentinelCountingService.countsTime,
+                                sentinelCountingService.uniqueUserCountTime)
+                    }
+                    .doOnNext { snapshot = it }
+                    .doOnError { log.warn("Failed to refresh the stats snapshot", it) }
+                    .doFinally { pendingRefresh.compareAndSet(refresh, null) }
+                    .cache()
+
+            if (pendingRefresh.compareAndSet(null, refresh)) {
+                refresh.subscribe({}, {}) // errors are logged above
+                return refresh
+            }
+        }
+    }
+
+    private fun render(
+            counts: SentinelCountingService.Counts,
+            uniqueUsers: Int,
+            countsTime: Long,
+            uniqueUsersTime: Long
+    ): Snapshot {
+        val now = System.currentTimeMillis()
+        val takenAt = Math.min(countsTime, uniqueUsersTime)
+        val root = JSONObject()
+        val a = JSONArray()
+
+        counts.shards.forEach { shard ->
+            val fbStats = JSONObject()
+            fbStats.put("id", shard.shard.id)
+                    .put("guilds", shard.guilds)
+                    .put("users", shard.users)
+                    .put("status", shard.shard.status)
+
+            a.put(fbStats)
+        }
+
+        val g = JSONObject()
+        g.put("playingPlayers", playerRegistry.playingCount())
+                .put("totalPlayers", playerRegistry.totalCount())
+                .put("distribution", appConfig.distribution)
+                .put("guilds", counts.guilds)
+                .put("users", uniqueUsers)
+
+        root.put("shards", a)
+        root.put("global", g)
+        root.put("updatedAt", takenAt)
+        root.put("countsUpdatedAt", countsTime)
+        root.put("usersUpdatedAt", uniqueUsersTime)
+
+        return Snapshot(root.toString(), now, takenAt)
+    }
+}
@@ -28,6 +28,7 @@ package fredboat.audio.player
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason
 import fredboat.audio.lavalink.SentinelLavalink
 import fredboat.audio.queue.*
 import fredboat.command.music.control.VoteSkipCommand
@@ -37,6 +38,7 @@ import fredboat.db.api.GuildConfigService
 import fredboat.definitions.PermissionLevel
 import fredboat.definitions.RepeatMode
 import fredboat.feature.I18n
+import fredboat.feature.metrics.jfr.TrackPlaybackEvent
 import fredboat.perms.Permission
 import fredboat.perms.PermsUtil
 import fredboat.sentinel.Guild
@@ -63,11 +65,15 @@ class GuildPlayer(
         audioPlayerManager: AudioPlayerManager,
         private val guildConfigService: GuildConfigService,
         ratelimiter: Ratelimiter,
-        youtubeAPI: YoutubeAPI
+        youtubeAPI: YoutubeAPI,
+        private val idleTracker: VoiceIdleTracker
 ) : AbstractPlayer(lavalink, SimpleTrackProvider(), guild) {
 
     private val audioLoader: AudioLoader
     val guildId = guild.id
+    /** Covers the playback of the current track, for flight recordings */
+    @Volatile
+    private var playbackEvent: TrackPlaybackEvent? = null
 
     companion object {
         private val log = LoggerFactory.getLogger(GuildPlayer::class.java)
@@ -390,7 +396,32 @@ class GuildPlayer(
 
     override fun onTrackStart(player: AudioPlayer?, track: AudioTrack?) {
         voteSkipCleanup()
+        playbackEvent = TrackPlaybackEvent().apply {
+            guildId = this@GuildPlayer.guildId
+            identifier = track?.identifier
+            source = track?.sourceManager?.sourceName
+            begin()
+        }
         super.onTrackStart(player, track)
+        idleTracker.onPlayerStateChange(guild)
+    }
+
+    override fun onTrackEnd(player: AudioPlayer?, track: AudioTrack?, endReason: AudioTrackEndReason?) {
+        playbackEvent?.let {
+            it.endReason = endReason?.name
+            it.commit()
+        }
+        playbackEvent = null
+        super.onTrackEnd(player, track, endReason)
+        idleTracker.onPlayerStateChange(guild)
+    }
+
+    override fun onPlayerPause(player: AudioPlayer?) {
+        idleTracker.onPlayerStateChange(guild)
+    }
+
+    override fun onPlayerResume(player: AudioPlayer?) {
+        idleTracker.onPlayerStateChange(guild)
     }
 
     override fun destroy() {
@@ -44,7 +44,8 @@ import kotlin.streams.toList
 class PlayerRegistry(private val musicTextChannelProvider: MusicTextChannelProvider,
                      private val guildConfigService: GuildConfigService, private val lavalink: SentinelLavalink,
                      @param:Qualifier("loadAudioPlayerManager") val audioPlayerManager: AudioPlayerManager,
-                     private val ratelimiter: Ratelimiter, private val youtubeAPI: YoutubeAPI) {
+                     private val ratelimiter: Ratelimiter, private val youtubeAPI: YoutubeAPI,
+                     private val idleTracker: VoiceIdleTracker) {
 
     companion object {
         const val DEFAULT_VOLUME = 1f
@@ -71,7 +72,7 @@ class PlayerRegistry(private val musicTextChannelProvider: MusicTextChannelProvi
         return registry.computeIfAbsent(
                 guild.id) {
             val p = GuildPlayer(lavalink, guild, musicTextChannelProvider, audioPlayerManager, guildConfigService,
-                    ratelimiter, youtubeAPI)
+                    ratelimiter, youtubeAPI, idleTracker)
             p.volume = DEFAULT_VOLUME
             p
         }
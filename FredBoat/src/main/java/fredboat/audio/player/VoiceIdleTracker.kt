@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.audio.player
+
+import fredboat.audio.lavalink.SentinelLavalink
+import fredboat.command.music.control.VoteSkipCommand
+import fredboat.event.SentinelEventHandler
+import fredboat.feature.metrics.Metrics
+import fredboat.sentinel.Guild
+import fredboat.sentinel.GuildCache
+import fredboat.sentinel.Member
+import fredboat.sentinel.VoiceChannel
+import fredboat.util.TimerWheel
+import lavalink.client.io.Link
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tracks which of our voice connections are idle, and since when. Instead of checking all guilds periodically, a
+ * guild is only looked at when something that matters happens in it: members joining or leaving voice, or its
+ * player starting or stopping. Idle connections get a deadline, and are disconnected by [expire] once it passes.
+ */
+@Component
+class VoiceIdleTracker(
+        private val guildCache: GuildCache,
+        private val lavalink: SentinelLavalink
+) : SentinelEventHandler() {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(VoiceIdleTracker::class.java)
+        private val EMPTY_TIMEOUT = TimeUnit.MINUTES.toMillis(5) // No humans in the VC
+        private val UNUSED_TIMEOUT = TimeUnit.HOURS.toMillis(1) // Effective when users are in the VC, but the player is not playing
+    }
+
+    private enum class Idleness(val timeout: Long) {
+        EMPTY(EMPTY_TIMEOUT),
+        UNUSED(UNUSED_TIMEOUT)
+    }
+
+    // All of the below is guarded by the lock
+    private val lock = Any()
+    private val deadlines = TimerWheel(TimeUnit.SECONDS.toMillis(10), 512)
+    private val idleness = HashMap<Long, Idleness>()
+
+    val idleCount: Int
+        get() = synchronized(lock) { deadlines.size }
+
+    /** @return true if the voice connection of the guild is idle and has a deadline */
+    fun isIdle(guild: Guild) = synchronized(lock) { deadlines.contains(guild.id) }
+
+    override fun onVoiceJoin(channel: VoiceChannel, member: Member) = update(channel.guild)
+
+    override fun onVoiceLeave(channel: VoiceChannel, member: Member) = update(channel.guild)
+
+    override fun onVoiceMove(oldChannel: VoiceChannel, newChannel: VoiceChannel, member: Member) = update(newChannel.guild)
+
+    override fun onGuildLeave(guildId: Long, joinTime: Instant) {
+        synchronized(lock) {
+            deadlines.cancel(guildId)
+            idleness.remove(guildId)
+        }
+    }
+
+    /**
+     * Players call this when they start, stop, pause or resume playing.
+     */
+    fun onPlayerStateChange(guild: Guild) = update(guild)
+
+    /**
+     * Re-evaluates the voice connection of the guild. A connection that stays idle the same way keeps its deadline,
+     * so repeated events don't postpone its cleanup.
+     */
+    fun update(guild: Guild) {
+        val current = idlenessOf(guild)
+        synchronized(lock) {
+            if (current == null) {
+                deadlines.cancel(guild.id)
+                idleness.remove(guild.id)
+            } else if (idleness.put(guild.id, current) != current) {
+                deadlines.schedule(guild.id, System.currentTimeMillis() + current.timeout)
+            }
+        }
+    }
+
+    /**
+     * Disconnects the connections whose deadline has passed, if they are still idle.
+     */
+    fun expire() {
+        val now = System.currentTimeMillis()
+        val expired = synchronized(lock) {
+            deadlines.advance(now).map { it to idleness.remove(it) }
+        }
+
+        var closed = 0
+        for ((guildId, previous) in expired) {
+            try {
+                val guild = guildCache.getIfCached(guildId) ?: continue
+                val current = idlenessOf(guild)
+                if (current == null) continue
+                if (current != previous) {
+                    update(guild) // idle in a different way than when it was scheduled, start over
+                    continue
+                }
+
+                VoteSkipCommand.guildSkipVotes.remove(guildId)
+                guild.existingLink?.disconnect()
+                closed++
+            } catch (e: Exception) {
+                log.error("Failed to clean up the voice connection of guild {}", guildId, e)
+            }
+        }
+        if (closed > 0) {
+            log.info("Closed {} idle voice connections", closed)
+            Metrics.voiceChannelsCleanedUp.inc(closed.toDouble())
+        }
+    }
+
+    /**
+     * Catches up with connections whose events we missed, for example because their guild was not cached at the
+     * time. Only looks at the guilds we have links in.
+     */
+    fun reconcile() {
+        for (link in lavalink.links) {
+            val guild = guildCache.getIfCached(link.guildId.toLong()) ?: continue
+            update(guild)
+        }
+    }
+
+    /**
+     * @return how the connection of the guild is idle, or null if we are not connected or the connection is in use
+     */
+    private fun idlenessOf(guild: Guild): Idleness? {
+        val link = guild.existingLink ?: return null
+        if (!guild.selfPresent || link.state == Link.State.NOT_CONNECTED) return null
+
+        val vc = link.channel?.toLong()?.let { guild.getVoiceChannel(it) } ?: return Idleness.EMPTY
+        if (vc.members.none { !it.isBot }) return Idleness.EMPTY
+        if (guild.guildPlayer?.isPlaying == true) return null
+        return Idleness.UNUSED
+    }
+}
@@ -103,12 +103,12 @@ open class AudioTrackContext(val track: AudioTrack, val member: Member, priority
         return result
     }
 
+    /*
+     * Track contexts outlive language changes of their guild, so unlike a command Context these resolve the locale on
+     * each call. Prefer the Context of a command where there is one.
+     */
     fun i18n(key: String) = I18n.get(guildId).getString(key)!!
-    fun i18nFormat(key: String, vararg values: Any): String {
-        var str = i18n(key)
-        values.forEachIndexed { i, v -> str = str.replace("{$i}", v.toString()) }
-        return str
-    }
+    fun i18nFormat(key: String, vararg values: Any) = I18n.getLocale(guildId).format(key, *values)
 
 
 }
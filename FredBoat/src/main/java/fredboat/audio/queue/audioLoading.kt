@@ -36,6 +36,7 @@ import fredboat.audio.source.PlaylistImportSourceManager
 import fredboat.audio.source.PlaylistImporter
 import fredboat.audio.source.SpotifyPlaylistSourceManager
 import fredboat.feature.metrics.Metrics
+import fredboat.feature.metrics.jfr.TrackLoadEvent
 import fredboat.feature.togglz.FeatureFlags
 import fredboat.util.TextUtils
 import fredboat.util.extension.escapeAndDefuse
@@ -169,7 +170,7 @@ class AudioLoader(private val ratelimiter: Ratelimiter, internal val trackProvid
                     }
                 }
             } else {
-                ic.reply(ic.i18n("loadErrorSusp"))
+                ic.reply(ic.i18nFormat("loadErrorSusp", ic.identifier))
                 TextUtils.handleException("Failed to load a track", th, ic)
             }
         } catch (e: Exception) {
@@ -186,7 +187,20 @@ private class ResultHandler(val loader: AudioLoader, val context: IdentifierCont
         private val log: Logger = LoggerFactory.getLogger(ResultHandler::class.java)
     }
 
+    private val loadEvent = TrackLoadEvent().apply {
+        guildId = loader.gplayer.guildId
+        identifier = context.identifier
+        begin()
+    }
+
+    private fun commitLoadEvent(result: String, tracks: Int) {
+        loadEvent.result = result
+        loadEvent.tracks = tracks
+        loadEvent.commit()
+    }
+
     override fun loadFailed(fe: FriendlyException) {
+        commitLoadEvent("failed", 0)
         Metrics.trackLoadsFailed.inc()
         loader.handleThrowable(context, fe)
 
@@ -194,6 +208,7 @@ private class ResultHandler(val loader: AudioLoader, val context: IdentifierCont
     }
 
     override fun trackLoaded(at: AudioTrack) {
+        commitLoadEvent("track", 1)
         Metrics.tracksLoaded.inc()
         try {
             if (context.isSplit) {
@@ -228,6 +243,7 @@ private class ResultHandler(val loader: AudioLoader, val context: IdentifierCont
     }
 
     override fun playlistLoaded(ap: AudioPlaylist) {
+        commitLoadEvent("playlist", if (ap.tracks == null) 0 else ap.tracks.size)
         Metrics.tracksLoaded.inc((if (ap.tracks == null) 0 else ap.tracks.size).toDouble())
         try {
             if (context.isSplit) {
@@ -253,6 +269,7 @@ private class ResultHandler(val loader: AudioLoader, val context: IdentifierCont
     }
 
     override fun noMatches() {
+        commitLoadEvent("no_matches", 0)
         try {
             context.reply(context.i18nFormat("loadNoMatches", context.identifier))
         } catch (th: Throwable) {
@@ -29,10 +29,10 @@ import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException
 import com.sedmelluq.discord.lavaplayer.track.*
 import fredboat.audio.queue.PlaylistInfo
+import fredboat.commandmeta.CommandScheduler
 import fredboat.definitions.SearchProvider
 import fredboat.util.rest.SpotifyAPIWrapper
 import fredboat.util.rest.TrackSearcher
-import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.reactor.mono
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -56,7 +56,11 @@ import java.util.regex.Pattern
  *
  * @author napster
  */
-class SpotifyPlaylistSourceManager(private val trackSearcher: TrackSearcher, private val spotifyAPIWrapper: SpotifyAPIWrapper) : AudioSourceManager, PlaylistImporter {
+class SpotifyPlaylistSourceManager(
+        private val trackSearcher: TrackSearcher,
+        private val spotifyAPIWrapper: SpotifyAPIWrapper,
+        private val commandScheduler: CommandScheduler
+) : AudioSourceManager, PlaylistImporter {
 
      companion object {
 
@@ -113,7 +117,7 @@ class SpotifyPlaylistSourceManager(private val trackSearcher: TrackSearcher, pri
             //remove all punctuation
             val query = s.replace(TrackSearcher.PUNCTUATION_REGEX.toRegex(), "")
 
-            taskList.add(GlobalScope.mono { searchSingleTrack(query) }.toFuture())
+            taskList.add(commandScheduler.blockingScope.mono { searchSingleTrack(query) }.toFuture())
         }
 
         //build a tracklist from that task list
@@ -26,7 +26,6 @@
 package fredboat.command.admin;
 
 import fredboat.command.info.HelpCommand;
-import fredboat.commandmeta.CommandManager;
 import fredboat.commandmeta.CommandRegistry;
 import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
@@ -58,12 +57,11 @@ public class DisableCommandsCommand extends JCommand implements ICommandRestrict
                 return;
             }
 
-            if (CommandManager.Companion.getDisabledCommands().contains(command)) {
+            if (!CommandRegistry.disableCommand(command)) {
                 context.reply("This command is already disabled!");
                 return;
             }
 
-            CommandManager.Companion.getDisabledCommands().add(command);
             context.reply(":ok_hand: Command `" + command.getName() + "` disabled!");
         } else {
             HelpCommand.sendFormattedCommandHelp(context);
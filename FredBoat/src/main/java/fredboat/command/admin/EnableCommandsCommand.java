@@ -26,7 +26,6 @@
 package fredboat.command.admin;
 
 import fredboat.command.info.HelpCommand;
-import fredboat.commandmeta.CommandManager;
 import fredboat.commandmeta.CommandRegistry;
 import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
@@ -53,8 +52,7 @@ public class EnableCommandsCommand extends JCommand implements ICommandRestricte
                 return;
             }
 
-            if (CommandManager.Companion.getDisabledCommands().contains(command)) {
-                CommandManager.Companion.getDisabledCommands().remove(command);
+            if (CommandRegistry.enableCommand(command)) {
                 context.reply(":ok_hand: Command `" + command.getName() + "` enabled!");
                 return;
             }
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.command.admin
+
+import fredboat.command.info.HelpCommand
+import fredboat.commandmeta.abs.Command
+import fredboat.commandmeta.abs.CommandContext
+import fredboat.commandmeta.abs.ICommandRestricted
+import fredboat.definitions.PermissionLevel
+import fredboat.feature.metrics.jfr.FlightRecordings
+import fredboat.messaging.internal.Context
+import java.io.IOException
+import java.time.Duration
+
+/**
+ * Starts and dumps bounded Java Flight Recorder recordings, which include our own command, Sentinel, music and
+ * backend events.
+ */
+class FlightRecorderCommand(name: String, vararg aliases: String) : Command(name, *aliases), ICommandRestricted {
+
+    override val minimumPerms: PermissionLevel
+        get() = PermissionLevel.BOT_ADMIN
+
+    override suspend fun invoke(context: CommandContext) {
+        if (!context.hasArguments()) {
+            HelpCommand.sendFormattedCommandHelp(context)
+            return
+        }
+        try {
+            when (context.args[0]) {
+                "start" -> start(context)
+                "dump" -> context.reply("Dumped the recording to `${FlightRecordings.dump()}`")
+                "stop" -> context.reply(if (FlightRecordings.stop()) "Stopped the recording." else "No recording is running.")
+                "status" -> context.reply(FlightRecordings.status())
+                else -> HelpCommand.sendFormattedCommandHelp(context)
+            }
+        } catch (e: IllegalStateException) {
+            context.reply(e.message ?: "Illegal state")
+        } catch (e: IOException) {
+            context.reply("Flight recorder I/O failed: ${e.message ?: e.javaClass.simpleName}")
+        }
+    }
+
+    private fun start(context: CommandContext) {
+        val minutes = context.args.getOrNull(1)?.toLongOrNull()
+        if (context.args.size > 1 && (minutes == null || minutes <= 0)) {
+            context.reply("`${context.args[1]}` is not a valid amount of minutes")
+            return
+        }
+        val duration = minutes?.let { Duration.ofMinutes(it) } ?: FlightRecordings.DEFAULT_DURATION
+        val started = FlightRecordings.start(duration)
+        context.reply("Started a flight recording for ${started.toMinutes()} minutes, " +
+                "capped at ${FlightRecordings.MAX_SIZE_BYTES / 1024 / 1024} MB.")
+    }
+
+    override fun help(context: Context): String {
+        return ("{0}{1} start [minutes]"
+                + "\n{0}{1} dump"
+                + "\n{0}{1} stop"
+                + "\n{0}{1} status"
+                + "\n#Record a Java Flight Recorder profile, at most ${FlightRecordings.MAX_DURATION.toMinutes()} minutes long,"
+                + " and dump it to the jfr directory of the bot.")
+    }
+}
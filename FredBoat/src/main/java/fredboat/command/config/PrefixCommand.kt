@@ -38,7 +38,10 @@ import fredboat.perms.PermsUtil
 import fredboat.sentinel.Guild
 import fredboat.util.rest.CacheUtil
 import io.prometheus.client.guava.cache.CacheMetricsCollector
+import org.slf4j.LoggerFactory
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.RejectedExecutionException
 import java.util.concurrent.TimeUnit
 
 /**
@@ -59,7 +62,9 @@ class PrefixCommand(cacheMetrics: CacheMetricsCollector, name: String, vararg al
                 //Listen/Notify system for changes to in memory cached values backed by the db
                 .recordStats()
                 .refreshAfterWrite(1, TimeUnit.MINUTES) //NOTE: never use refreshing without async reloading, because Guavas cache uses the thread calling it to do cleanup tasks (including refreshing)
-                .expireAfterAccess(1, TimeUnit.MINUTES) //evict inactive guilds
+                //evict inactive guilds. entries of guilds that are held in the guild cache are kept warm by the
+                // GuildCacheInvalidationAgent, and dropped when the guild is invalidated
+                .expireAfterAccess(15, TimeUnit.MINUTES)
                 .concurrencyLevel(Launcher.botController.appConfig.shardCount)  //each shard has a thread (main JDA thread) accessing this cache many times
                 .build(CacheLoader.asyncReloading(CacheLoader.from<Long, Optional<String>> {
                     guildId -> Launcher.botController.prefixService.getPrefix(Prefix.GuildBotId(
@@ -69,11 +74,50 @@ class PrefixCommand(cacheMetrics: CacheMetricsCollector, name: String, vararg al
                 },
                         Launcher.botController.executor))!!
 
+        private val log = LoggerFactory.getLogger(PrefixCommand::class.java)
+
+        //guilds for which a prefix load has been submitted to the executor and not finished yet
+        private val pendingLoads: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+
+        /**
+         * Blocks while the prefix is being loaded. Do not call this on the message path, use [peekPrefix] there.
+         */
         fun giefPrefix(guildId: Long) = CacheUtil.getUncheckedUnwrapped(CUSTOM_PREFIXES, guildId)
                 .orElse(Launcher.botController.appConfig.prefix)
 
         fun giefPrefix(guild: Guild) = giefPrefix(guild.id)
 
+        /**
+         * Never blocks. If the prefix of the guild is not cached yet, it is loaded in the background and null is
+         * returned, meaning that the caller should make do with the default prefix and the mention for now.
+         *
+         * @return the cached custom prefix of the guild, an empty optional if it uses the default prefix, or null if
+         * it is not known yet
+         */
+        fun peekPrefix(guildId: Long): Optional<String>? {
+            val prefix = CUSTOM_PREFIXES.getIfPresent(guildId)
+            if (prefix == null) prefetchPrefix(guildId)
+            return prefix
+        }
+
+        private fun prefetchPrefix(guildId: Long) {
+            if (!pendingLoads.add(guildId)) return
+            try {
+                Launcher.botController.executor.execute {
+                    try {
+                        CUSTOM_PREFIXES.getUnchecked(guildId)
+                    } catch (e: Exception) {
+                        log.warn("Failed to load prefix of guild {}", guildId, e)
+                    } finally {
+                        pendingLoads.remove(guildId)
+                    }
+                }
+            } catch (e: RejectedExecutionException) {
+                pendingLoads.remove(guildId)
+                log.warn("Could not submit prefix load of guild {}", guildId, e)
+            }
+        }
+
         fun showPrefix(context: Context, prefix: String) {
             val p = if (prefix.isEmpty()) "No Prefix" else prefix
             context.reply(context.i18nFormat("prefixGuild", "``$p``")
@@ -31,10 +31,12 @@ import fredboat.commandmeta.CommandManager
 import fredboat.commandmeta.abs.Command
 import fredboat.commandmeta.abs.CommandContext
 import fredboat.commandmeta.abs.IInfoCommand
+import fredboat.definitions.PermissionLevel
 import fredboat.feature.I18n
 import fredboat.main.Launcher
 import fredboat.main.getBotController
 import fredboat.messaging.internal.Context
+import fredboat.perms.PermsUtil
 import fredboat.sentinel.RawUser
 import fredboat.util.AppInfo
 import fredboat.util.DiscordUtil
@@ -42,6 +44,7 @@ import fredboat.util.TextUtils
 import kotlinx.coroutines.reactive.awaitSingle
 import java.text.MessageFormat
 import java.util.*
+import java.util.concurrent.atomic.AtomicBoolean
 
 class StatsCommand(
         name: String,
@@ -54,15 +57,38 @@ class StatsCommand(
     }
 
     override suspend fun invoke(context: CommandContext) {
+        if (context.args.firstOrNull() == "exact") {
+            countUsersExactly(context)
+            return
+        }
         context.reply(getStats(context))
     }
 
+    /**
+     * Counting exactly needs a set of all user ids, so this is reserved for bot admins and runs once at a time.
+     */
+    private suspend fun countUsersExactly(context: CommandContext) {
+        if (!PermsUtil.checkPermsWithFeedback(PermissionLevel.BOT_ADMIN, context)) return
+        if (!exactCountRunning.compareAndSet(false, true)) {
+            context.reply("Already counting the users, please wait.")
+            return
+        }
+        try {
+            context.sendTyping()
+            val users = getBotController().sentinelCountingService.countUniqueUsers(exact = true).awaitSingle()
+            context.reply("Counted ${users.count} unique users, using ${users.memoryBytes / 1024 / 1024} MB.")
+        } finally {
+            exactCountRunning.set(false)
+        }
+    }
+
     override fun help(context: Context): String {
-        return "{0}{1}\n#Show some statistics about this bot."
+        return "{0}{1}\n#Show some statistics about this bot. Bot admins can use `{0}{1} exact` to count the users exactly."
     }
 
     companion object {
         private var botId = 0L
+        private val exactCountRunning = AtomicBoolean(false)
 
         suspend fun getStats(context: Context?): String {
             context?.sendTyping()
@@ -100,7 +126,9 @@ class StatsCommand(
             val counts = getBotController().sentinelCountingService.getAllCountsCached()
             //val not = "not counted yet"
             content += "Known servers:                  " + counts.first.guilds + "\n"
-            content += "Users in servers:               " + counts.second + "\n"
+            val users = getBotController().sentinelCountingService.uniqueUserCountCached
+            content += "Users in servers:               " + counts.second +
+                    (if (users.exact) "" else String.format(" (estimated, ±%.1f%%)", users.relativeStandardError * 100)) + "\n"
             content += "Text channels:                  " + counts.first.textChannels + "\n"
             content += "Voice channels:                 " + counts.first.voiceChannels + "\n"
             content += "Categories:                     " + counts.first.categories + "\n"
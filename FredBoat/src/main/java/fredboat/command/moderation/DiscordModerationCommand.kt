@@ -41,13 +41,10 @@ import fredboat.sentinel.User
 import fredboat.shared.constant.DistributionEnum
 import fredboat.util.ArgumentUtil
 import fredboat.util.TextUtils
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.launch
 import kotlinx.coroutines.reactive.awaitFirstOrNull
 import org.slf4j.LoggerFactory
 import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
-import reactor.core.publisher.MonoSink
 import reactor.core.publisher.toMono
 import java.text.MessageFormat
 import java.util.regex.Pattern
@@ -208,28 +205,17 @@ abstract class DiscordModerationCommand protected constructor(name: String, vara
             Mono.empty()
         }
 
-        val finalReason = reason
-        var user: User? = null
-        userMono = userMono.doOnSuccess { user = it }
-        return userMono.then(Mono.create { sink: MonoSink<ModActionInfo> ->
-            if (user == null) {
-                sink.success() // Unable to find user, already sent feedback
-                return@create
-            }
-            GlobalScope.launch {
-                checkPreconditionWithFeedback(user!!, context)
-                        .doOnError { sink.error(it) }
-                        .subscribe { preconditionMet ->
-                            if (!preconditionMet) {
-                                sink.success() // Already given feedback
-                                return@subscribe
-                            }
-
-                            val guildMember = context.guild.getMember(user!!.id)
-                            sink.success(ModActionInfo(context, guildMember, user!!, keep, finalReason))
-                        }
-            }
-        })
+        val user = userMono.awaitFirstOrNull()
+                ?: return Mono.empty() // Unable to find user, already sent feedback
+        val preconditionMet = try {
+            checkPreconditionWithFeedback(user, context).awaitFirstOrNull()
+        } catch (e: Exception) {
+            return Mono.error(e)
+        }
+        if (preconditionMet != true) return Mono.empty() // Already given feedback
+
+        val guildMember = context.guild.getMember(user.id)
+        return ModActionInfo(context, guildMember, user, keep, reason).toMono()
     }
 
     /**
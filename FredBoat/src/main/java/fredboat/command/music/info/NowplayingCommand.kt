@@ -64,14 +64,14 @@ class NowplayingCommand(private val youtubeAPI: YoutubeAPI, name: String, vararg
 
         val embed = when {
             at is YoutubeAudioTrack && !FeatureFlags.DISABLE_NOWPLAYING_WITH_YTAPI.isActive ->
-                getYoutubeEmbed(atc, player, at)
-            at is SoundCloudAudioTrack -> getSoundcloudEmbed(atc, player, at)
-            at is BandcampAudioTrack -> getBandcampResponse(atc, player, at)
-            at is TwitchStreamAudioTrack -> getTwitchEmbed(atc, at)
+                getYoutubeEmbed(context, atc, player, at)
+            at is SoundCloudAudioTrack -> getSoundcloudEmbed(context, atc, player, at)
+            at is BandcampAudioTrack -> getBandcampResponse(context, atc, player, at)
+            at is TwitchStreamAudioTrack -> getTwitchEmbed(context, at)
             at is HttpAudioTrack && at.getIdentifier().contains("gensokyoradio.net") -> getGensokyoRadioEmbed(context)
-            at is HttpAudioTrack -> getHttpEmbed(atc, player, at)
+            at is HttpAudioTrack -> getHttpEmbed(context, atc, player, at)
             //at is BeamAudioTrack -> embed = getBeamEmbed(atc, at)
-            else -> getDefaultEmbed(atc, player, at)
+            else -> getDefaultEmbed(context, atc, player, at)
         }
         if (embed.footer == null) embed.footer {
             text = "Requested by ${atc.member.effectiveName}#${atc.member.discrim}" // TODO i18n
@@ -81,12 +81,12 @@ class NowplayingCommand(private val youtubeAPI: YoutubeAPI, name: String, vararg
         context.reply(embed)
     }
 
-    private fun getYoutubeEmbed(atc: AudioTrackContext, player: GuildPlayer, at: YoutubeAudioTrack) = embed {
+    private fun getYoutubeEmbed(context: Context, atc: AudioTrackContext, player: GuildPlayer, at: YoutubeAudioTrack) = embed {
         val yv: YoutubeVideo
         try {
             yv = youtubeAPI.getVideoFromID(at.identifier, true)
         } catch (e: Exception) {
-            return getDefaultEmbed(atc, player, at)
+            return getDefaultEmbed(context, atc, player, at)
         }
 
         title = atc.effectiveTitle
@@ -112,36 +112,36 @@ class NowplayingCommand(private val youtubeAPI: YoutubeAPI, name: String, vararg
         if (desc.length > 450) {
             desc = TextUtils.substringPreserveWords(desc, 400) + " [...]"
         }
-        if (desc != "") field(atc.i18n("npDescription"), desc, false)
+        if (desc != "") field(context.i18n("npDescription"), desc, false)
     }
 
-    private fun getSoundcloudEmbed(atc: AudioTrackContext, player: GuildPlayer, at: SoundCloudAudioTrack) = embed {
+    private fun getSoundcloudEmbed(context: Context, atc: AudioTrackContext, player: GuildPlayer, at: SoundCloudAudioTrack) = embed {
         title = atc.effectiveTitle
         author {
             name = at.info.author
         }
-        description = atc.i18nFormat("npLoadedSoundcloud",
+        description = context.i18nFormat("npLoadedSoundcloud",
                 TextUtils.formatTime(atc.getEffectivePosition(player)), TextUtils.formatTime(atc.effectiveDuration))
         color = Color(255, 85, 0).rgb
     }
 
-    private fun getBandcampResponse(atc: AudioTrackContext, player: GuildPlayer, at: BandcampAudioTrack) = embed {
+    private fun getBandcampResponse(context: Context, atc: AudioTrackContext, player: GuildPlayer, at: BandcampAudioTrack) = embed {
         title = atc.effectiveTitle
         author { name = at.info.author }
         val desc = if (at.duration == java.lang.Long.MAX_VALUE) "[LIVE]"
         else
             "[${TextUtils.formatTime(atc.getEffectivePosition(player))}/${TextUtils.formatTime(atc.effectiveDuration)}]"
-        description = atc.i18nFormat("npLoadedBandcamp", desc)
+        description = context.i18nFormat("npLoadedBandcamp", desc)
         color = Color(99, 154, 169).rgb
     }
 
-    private fun getTwitchEmbed(atc: AudioTrackContext, at: TwitchStreamAudioTrack) = embed {
+    private fun getTwitchEmbed(context: Context, at: TwitchStreamAudioTrack) = embed {
         author {
             name = at.info.author
             url = at.identifier
             //TODO: Add thumb
         }
-        description = atc.i18n("npLoadedTwitch")
+        description = context.i18n("npLoadedTwitch")
         color = Color(100, 65, 164).rgb
     }
 
@@ -163,7 +163,7 @@ class NowplayingCommand(private val youtubeAPI: YoutubeAPI, name: String, vararg
         }
     }*/
 
-    private fun getHttpEmbed(atc: AudioTrackContext, player: GuildPlayer, at: HttpAudioTrack) = embed {
+    private fun getHttpEmbed(context: Context, atc: AudioTrackContext, player: GuildPlayer, at: HttpAudioTrack) = embed {
         author { name = at.info.author }
         title = atc.effectiveTitle
         url = at.identifier
@@ -172,17 +172,17 @@ class NowplayingCommand(private val youtubeAPI: YoutubeAPI, name: String, vararg
             "[LIVE]" else
             "[${TextUtils.formatTime(atc.getEffectivePosition(player))}/${TextUtils.formatTime(atc.effectiveDuration)}]"
 
-        description = atc.i18nFormat("npLoadedFromHTTP", desc, at.identifier)
+        description = context.i18nFormat("npLoadedFromHTTP", desc, at.identifier)
     }
 
-    private fun getDefaultEmbed(atc: AudioTrackContext, player: GuildPlayer, at: AudioTrack) = coloredEmbed {
+    private fun getDefaultEmbed(context: Context, atc: AudioTrackContext, player: GuildPlayer, at: AudioTrack) = coloredEmbed {
         author { name = at.info.author }
         title = atc.effectiveTitle
 
         val desc = if (at.duration == java.lang.Long.MAX_VALUE)
             "[LIVE]" else
             "[${TextUtils.formatTime(atc.getEffectivePosition(player))}/${TextUtils.formatTime(atc.effectiveDuration)}]"
-        description = atc.i18nFormat("npLoadedDefault", desc, at.sourceManager.sourceName)
+        description = context.i18nFormat("npLoadedDefault", desc, at.sourceManager.sourceName)
         if (at is YoutubeAudioTrack) color = YOUTUBE_RED
     }
 
@@ -29,6 +29,7 @@ import fredboat.command.config.PrefixCommand
 import fredboat.commandmeta.abs.CommandContext
 import fredboat.config.idString
 import fredboat.config.property.AppConfig
+import fredboat.feature.metrics.CommandTrace
 import fredboat.feature.metrics.Metrics
 import fredboat.sentinel.Message
 import fredboat.sentinel.RawUser
@@ -37,8 +38,7 @@ import kotlinx.coroutines.reactive.awaitFirstOrNull
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.stereotype.Component
-import java.util.*
-import java.util.regex.Pattern
+import kotlin.coroutines.coroutineContext
 
 /**
  * Created by napster on 23.02.18.
@@ -52,71 +52,42 @@ class CommandContextParser(
 
     companion object {
         private val log = LoggerFactory.getLogger(CommandContext::class.java)
+    }
+
+    private val botId = selfUser.idString
 
-        // https://regex101.com/r/ceFMeF/6
-        //group 1 is the mention, group 2 is the id of the mention, group 3 is the rest of the input including new lines
-        private val MENTION_PREFIX = Pattern.compile("^(<@!?([0-9]+)>)(.*)$", Pattern.DOTALL)
+    /**
+     * Cheap check whether a message might be a command, meant to run on the consumer thread before dispatching the
+     * message for parsing. Never does any I/O: if the custom prefix of the guild is not cached yet, only the default
+     * prefix and the mention are considered, same as in [parse].
+     */
+    fun isCommandCandidate(content: String, guildId: Long): Boolean {
+        if (CommandTokenizer.mentionEnd(content, botId) >= 0) return true
+        if (content.startsWith(appConfig.prefix)) return true
+        val customPrefix = PrefixCommand.peekPrefix(guildId) ?: return false
+        return customPrefix.isPresent && content.startsWith(customPrefix.get())
     }
 
     /**
      * @return The full context for the triggered command, or null if it's not a command that we know.
      */
     suspend fun parse(event: MessageReceivedEvent): CommandContext? {
-        val content = event.content
-        var input: String
-        var isMention = false
-        val mentionMatcher = MENTION_PREFIX.matcher(content)
-        // either starts with a mention of us
-        val botId = selfUser.idString
-        if (mentionMatcher.find() && mentionMatcher.group(2) == botId) {
-            input = mentionMatcher.group(3).trim { it <= ' ' }
-            isMention = true
-        } else {
-            val prefix = PrefixCommand.giefPrefix(event.guild)
-            val defaultPrefix = appConfig.prefix
-            if (content.startsWith(prefix)) {
-                input = content.substring(prefix.length)
-                if (prefix == defaultPrefix) {
-                    Metrics.prefixParsed.labels("default").inc()
-                } else {
-                    Metrics.prefixParsed.labels("custom").inc()
-                }
-            } else {
-                //hardcoded check for the help or prefix command that is always displayed as FredBoat status
-                if (content.startsWith(defaultPrefix + CommandInitializer.HELP_COMM_NAME)
-                        || content.startsWith(defaultPrefix + CommandInitializer.PREFIX_COMM_NAME)) {
-                    Metrics.prefixParsed.labels("default").inc()
-                    input = content.substring(defaultPrefix.length)
-                } else {
-                    //no match neither mention nor custom/default prefix
-                    return null
-                }
-            }
-        }// or starts with a custom/default prefix
-        input = input.trim { it <= ' ' }// eliminate possible whitespace between the mention/prefix and the rest of the input
-        if (input.isEmpty()) {
-            if (isMention) { //just a mention and nothing else? trigger the prefix command
-                input = "prefix"
-            } else {
-                return null //no command will be detectable from an empty input
-            }
-        }
-
-        // the \p{javaSpaceChar} instead of the better known \s is used because it actually includes unicode whitespaces
-        val args = input.split("\\p{javaSpaceChar}+".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
-        if (args.isEmpty()) {
-            return null //while this shouldn't technically be possible due to the preprocessing of the input, better be safe than throw exceptions
-        }
-
-        val commandTrigger = args[0]
+        //never wait for the prefix of the guild to load, serve the default prefix and the mention in the meantime
+        val tokens = CommandTokenizer.tokenize(event.content, botId, appConfig.prefix) {
+            PrefixCommand.peekPrefix(event.guild)?.orElse(appConfig.prefix) ?: appConfig.prefix
+        } ?: return null
+        Metrics.prefixParsed.labels(tokens.prefixType).inc()
 
-        val command = CommandRegistry.findCommand(commandTrigger.toLowerCase())
+        val command = CommandRegistry.findCommand(tokens.content, tokens.triggerStart, tokens.triggerEnd)
+        val trace = coroutineContext[CommandTrace]
+        trace?.mark("parse")
         if (command == null) {
-            log.info("Unknown command:\t{}", commandTrigger)
+            log.info("Unknown command:\t{}", tokens.trigger)
             return null
         } else {
             val guild = getGuildMono(event.guild, textChannelInvoked = event.channel).retry(1).awaitFirstOrNull()
                     ?: throw RuntimeException("Guild ${event.guild} doesn't seem to exist")
+            trace?.mark("guild_fetch")
             val channel = guild.getTextChannel(event.channel) ?: throw RuntimeException("Channel was sent in null channel")
             val member = guild.getMember(event.author) ?: throw RuntimeException("Unknown message author")
 
@@ -125,10 +96,7 @@ class CommandContextParser(
                     channel,
                     member,
                     Message(guild, event),
-                    isMention,
-                    commandTrigger,
-                    Arrays.copyOfRange(args, 1, args.size), //exclude args[0] that contains the command trigger
-                    input.replaceFirst(commandTrigger.toRegex(), "").trim { it <= ' ' },
+                    tokens,
                     command)
         }
     }
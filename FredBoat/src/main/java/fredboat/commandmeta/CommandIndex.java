@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.commandmeta;
+
+import fredboat.commandmeta.abs.Command;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable lookup table over the names and aliases of all registered commands, together with the set of globally
+ * disabled commands. Changes are done by building a new index and swapping it in, see {@link CommandRegistry}.
+ * <p>
+ * Lookups are case insensitive and work on a region of the input, so the parser can resolve the command trigger
+ * without creating a lowercased copy of it, or a substring at all.
+ */
+public class CommandIndex {
+
+    private final String[] keys; //lower case
+    private final Command[] values;
+    private final int mask;
+    private final Set<String> names;
+    private final Set<Command> disabled;
+
+    private CommandIndex(String[] keys, Command[] values, Set<String> names, Set<Command> disabled) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+        this.names = names;
+        this.disabled = disabled;
+    }
+
+    /**
+     * If several modules register the same name or alias, the first one encountered wins.
+     */
+    public static CommandIndex build(Collection<CommandRegistry> registries, Set<Command> disabled) {
+        Map<String, Command> all = new LinkedHashMap<>();
+        for (CommandRegistry registry : registries) {
+            for (String name : registry.getRegisteredCommandsAndAliases()) {
+                Command command = registry.getCommand(name);
+                if (command != null) {
+                    all.putIfAbsent(name, command);
+                }
+            }
+        }
+
+        //keep the load factor at or below 0.5 so that probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(all.size(), 1) * 2 - 1) << 1;
+        String[] keys = new String[capacity];
+        Command[] values = new Command[capacity];
+        int mask = capacity - 1;
+        for (Map.Entry<String, Command> entry : all.entrySet()) {
+            String key = entry.getKey();
+            int slot = hash(key, 0, key.length()) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = entry.getValue();
+        }
+
+        return new CommandIndex(keys, values, Collections.unmodifiableSet(all.keySet()),
+                Collections.unmodifiableSet(new HashSet<>(disabled)));
+    }
+
+    /**
+     * @return a copy of this index with a different set of disabled commands
+     */
+    public CommandIndex withDisabled(Set<Command> disabled) {
+        return new CommandIndex(keys, values, names, Collections.unmodifiableSet(new HashSet<>(disabled)));
+    }
+
+    @Nullable
+    public Command find(@Nonnull CharSequence input) {
+        return find(input, 0, input.length());
+    }
+
+    /**
+     * @param start inclusive start of the name in the input
+     * @param end   exclusive end of the name in the input
+     */
+    @Nullable
+    public Command find(@Nonnull CharSequence input, int start, int end) {
+        int length = end - start;
+        int slot = hash(input, start, end) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.length() == length && regionEquals(key, input, start)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean isDisabled(@Nonnull Command command) {
+        return disabled.contains(command);
+    }
+
+    @Nonnull
+    public Set<Command> getDisabled() {
+        return disabled;
+    }
+
+    /**
+     * @return all registered names and aliases, lower cased
+     */
+    @Nonnull
+    public Set<String> getNames() {
+        return names;
+    }
+
+    private static int hash(CharSequence input, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(input.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionEquals(String key, CharSequence input, int start) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != Character.toLowerCase(input.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
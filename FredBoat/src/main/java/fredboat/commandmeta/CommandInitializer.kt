@@ -103,6 +103,7 @@ class CommandInitializer(cacheMetrics: CacheMetricsCollector, weather: Weather,
         adminModule.registerCommand(UnblacklistCommand("unblacklist", "unlimit"))
         adminModule.registerCommand(GuildDebugCommand("guilddebug", "guilddump", "dumpguild", "gdump"))
         adminModule.registerCommand(UnsubCommand("unsub", playerRegistry = playerRegistry))
+        adminModule.registerCommand(FlightRecorderCommand("jfr", "flightrecorder"))
 
 
         // Informational / Debugging / Maintenance - always on
@@ -265,6 +266,8 @@ class CommandInitializer(cacheMetrics: CacheMetricsCollector, weather: Weather,
         musicModule.registerCommand(RestartCommand("restart", "replay"))
         musicModule.registerCommand(RewindCommand("rewind", "rew"))
         musicModule.registerCommand(SeekCommand("seek"))
+
+        CommandRegistry.rebuildIndex()
         initialized = true
     }
 
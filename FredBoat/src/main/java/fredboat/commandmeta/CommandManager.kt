@@ -27,7 +27,6 @@ package fredboat.commandmeta
 
 
 import fredboat.audio.player.MusicTextChannelProvider
-import fredboat.commandmeta.abs.Command
 import fredboat.commandmeta.abs.CommandContext
 import fredboat.commandmeta.abs.ICommandRestricted
 import fredboat.commandmeta.abs.IMusicCommand
@@ -44,7 +43,6 @@ import kotlinx.coroutines.delay
 import kotlinx.coroutines.reactive.awaitSingle
 import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.stereotype.Component
-import java.util.*
 import java.util.concurrent.atomic.AtomicInteger
 
 @Component
@@ -53,7 +51,6 @@ class CommandManager(private val patronageChecker: PatronageChecker, private val
                      private val selfUser: RawUser) {
 
     companion object {
-        val disabledCommands: Set<Command> = HashSet(0)
         val totalCommandsExecuted = AtomicInteger(0)
     }
 
@@ -95,7 +92,7 @@ class CommandManager(private val patronageChecker: PatronageChecker, private val
             }
         }
 
-        if (disabledCommands.contains(invoked)) {
+        if (CommandRegistry.isDisabled(invoked)) {
             context.replyWithName("Sorry the `" + context.command.name + "` command is currently disabled. Please try again later")
             return
         }
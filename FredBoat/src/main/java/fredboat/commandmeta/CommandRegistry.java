@@ -32,14 +32,21 @@ import fredboat.messaging.internal.Context;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class CommandRegistry {
 
     private static Map<Module, CommandRegistry> modules = new HashMap<>();
 
+    //survives index rebuilds
+    private static Set<Command> disabledCommands = Collections.emptySet();
+
+    //lookup table over all modules. dropped whenever commands are registered, and rebuilt on the next lookup
+    @Nullable
+    private static volatile CommandIndex index;
+
     public static void registerModule(@Nonnull CommandRegistry registry) {
         modules.put(registry.module, registry);
+        index = null;
     }
 
     @Nonnull
@@ -51,13 +58,78 @@ public class CommandRegistry {
         return mod;
     }
 
+    /**
+     * Case insensitive lookup of a command by one of its names or aliases
+     */
     @Nullable
     public static Command findCommand(@Nonnull String name) {
-        return modules.values().stream()
-                .map(cr -> cr.getCommand(name))
-                .filter(Objects::nonNull)
-                .findAny()
-                .orElse(null);
+        return getIndex().find(name);
+    }
+
+    /**
+     * Case insensitive lookup of a command by a name or alias that is contained in the input at [start, end)
+     */
+    @Nullable
+    public static Command findCommand(@Nonnull CharSequence input, int start, int end) {
+        return getIndex().find(input, start, end);
+    }
+
+    @Nonnull
+    public static CommandIndex getIndex() {
+        CommandIndex current = index;
+        if (current == null) {
+            current = rebuildIndex();
+        }
+        return current;
+    }
+
+    /**
+     * Build the lookup index over all currently registered commands. This happens lazily on the first lookup too,
+     * but should be called once all commands have been registered to keep that work out of the message path.
+     */
+    @Nonnull
+    public static synchronized CommandIndex rebuildIndex() {
+        CommandIndex fresh = CommandIndex.build(modules.values(), disabledCommands);
+        index = fresh;
+        return fresh;
+    }
+
+    public static boolean isDisabled(@Nonnull Command command) {
+        return getIndex().isDisabled(command);
+    }
+
+    /**
+     * Globally disable a command
+     *
+     * @return false if the command was disabled already
+     */
+    public static synchronized boolean disableCommand(@Nonnull Command command) {
+        CommandIndex current = getIndex();
+        if (current.isDisabled(command)) {
+            return false;
+        }
+        Set<Command> disabled = new HashSet<>(current.getDisabled());
+        disabled.add(command);
+        disabledCommands = disabled;
+        index = current.withDisabled(disabled);
+        return true;
+    }
+
+    /**
+     * Re-enable a globally disabled command
+     *
+     * @return false if the command was not disabled
+     */
+    public static synchronized boolean enableCommand(@Nonnull Command command) {
+        CommandIndex current = getIndex();
+        if (!current.isDisabled(command)) {
+            return false;
+        }
+        Set<Command> disabled = new HashSet<>(current.getDisabled());
+        disabled.remove(command);
+        disabledCommands = disabled;
+        index = current.withDisabled(disabled);
+        return true;
     }
 
     public static int getTotalSize() {
@@ -67,9 +139,7 @@ public class CommandRegistry {
     }
 
     public static Set<String> getAllRegisteredCommandsAndAliases() {
-        return modules.values().stream()
-                .flatMap(cr -> cr.getRegisteredCommandsAndAliases().stream())
-                .collect(Collectors.toSet());
+        return getIndex().getNames();
     }
 
 
@@ -88,6 +158,7 @@ public class CommandRegistry {
             registry.put(alias.toLowerCase(), command);
         }
         command.setModule(this.module);
+        index = null;
     }
 
     //may contain duplicates, if a command was added additional aliases
@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.commandmeta
+
+import fredboat.feature.metrics.Metrics
+import fredboat.feature.metrics.collectors.ThreadPoolCollector
+import kotlinx.coroutines.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.util.*
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import javax.annotation.PreDestroy
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
+
+/**
+ * Runs commands with a bounded amount of concurrency, and a bounded queue in front of it. Queued commands are started
+ * round-robin across guilds, and each guild can only have a few commands running at a time, so a single busy guild
+ * can't delay everyone else. When the queue is full, commands are shed instead of piling up.
+ *
+ * Commands, which frequently do blocking REST calls, run on a dedicated pool of their own. New commands are admitted
+ * while the pool has idle threads, so commands that are suspended, for example while waiting on Sentinel, don't hold
+ * up the others. Other work can be launched on [blockingScope] or [cpuScope] depending on whether it blocks or not,
+ * and doesn't compete with commands for threads.
+ */
+@Component
+class CommandScheduler(threadPoolCollector: ThreadPoolCollector) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(CommandScheduler::class.java)
+
+        const val COMMAND_THREADS = 64
+        // Bounds the suspended commands, which don't occupy a thread but are kept in memory
+        const val MAX_RUNNING = 1000
+        const val MAX_RUNNING_PER_GUILD = 3
+        const val BLOCKING_THREADS = 16
+        const val MAX_QUEUED = 1000
+        const val MAX_QUEUED_PER_GUILD = 10
+    }
+
+    private val commandPool = pool(COMMAND_THREADS, "command-worker")
+    // Unbounded, a coroutine dispatcher has no way of handling rejections
+    private val blockingPool = pool(BLOCKING_THREADS, "blocking-worker")
+
+    private val exceptionHandler = CoroutineExceptionHandler { _, t ->
+        log.error("Uncaught exception in scheduled work", t)
+    }
+
+    // Admission is limited by the scheduler itself
+    private val commandScope = CoroutineScope(AdmissionDispatcher() + SupervisorJob() + exceptionHandler)
+
+    /** For work that may block, like REST calls */
+    val blockingScope = CoroutineScope(blockingPool.asCoroutineDispatcher() + SupervisorJob() + exceptionHandler)
+
+    /** For work that never blocks */
+    val cpuScope = CoroutineScope(Dispatchers.Default + SupervisorJob() + exceptionHandler)
+
+    private class Task(
+            val guildId: Long,
+            val context: CoroutineContext,
+            val block: suspend CoroutineScope.() -> Unit
+    ) {
+        val queuedAt = System.nanoTime()
+    }
+
+    // All of the below is guarded by the lock
+    private val lock = Any()
+    private val queues = HashMap<Long, ArrayDeque<Task>>()
+    // guilds with queued tasks that may start another one, in the order they get to start their next one
+    private val readyGuilds = ArrayDeque<Long>()
+    private val runningPerGuild = HashMap<Long, Int>()
+    @Volatile // also read without the lock, to skip draining when nothing is queued
+    private var queued = 0
+    private var running = 0
+
+    // Command coroutines that are dispatched to the pool, either waiting for a thread or running on one
+    private val activeDispatches = AtomicInteger()
+
+    init {
+        threadPoolCollector.addPool("command-worker", commandPool)
+        threadPoolCollector.addPool("blocking-worker", blockingPool)
+    }
+
+    /**
+     * @param context additional context elements for the coroutine running the command
+     * @return false if the command was rejected because too many commands are queued already
+     */
+    fun submit(
+            guildId: Long,
+            context: CoroutineContext = EmptyCoroutineContext,
+            block: suspend CoroutineScope.() -> Unit
+    ): Boolean {
+        synchronized(lock) {
+            var queue = queues[guildId]
+            val rejection = when {
+                queued >= MAX_QUEUED -> "global"
+                queue != null && queue.size >= MAX_QUEUED_PER_GUILD -> "guild"
+                else -> null
+            }
+            if (rejection != null) {
+                Metrics.commandsRejected.labels(rejection).inc()
+                return false
+            }
+
+            if (queue == null) {
+                queue = ArrayDeque()
+                queues[guildId] = queue
+                if (runningPerGuild.getOrDefault(guildId, 0) < MAX_RUNNING_PER_GUILD) readyGuilds.addLast(guildId)
+            }
+            queue.addLast(Task(guildId, context, block))
+            queued++
+            Metrics.commandsQueued.set(queued.toDouble())
+        }
+        drain()
+        return true
+    }
+
+    private fun drain() {
+        while (true) {
+            val task = synchronized(lock) {
+                if (running >= MAX_RUNNING || activeDispatches.get() >= COMMAND_THREADS) return
+                val guildId = readyGuilds.pollFirst() ?: return
+                val queue = queues.getValue(guildId)
+                val task = queue.removeFirst()
+                val guildRunning = runningPerGuild.getOrDefault(guildId, 0) + 1
+                runningPerGuild[guildId] = guildRunning
+                // a guild at its limit gets back in line once one of its commands finishes
+                if (queue.isEmpty()) queues.remove(guildId)
+                else if (guildRunning < MAX_RUNNING_PER_GUILD) readyGuilds.addLast(guildId)
+                queued--
+                running++
+                Metrics.commandsQueued.set(queued.toDouble())
+                Metrics.commandsRunning.set(running.toDouble())
+                task
+            }
+            start(task)
+        }
+    }
+
+    private fun start(task: Task) {
+        Metrics.commandQueueWait.observe((System.nanoTime() - task.queuedAt) / 1_000_000_000.0)
+        val job = try {
+            commandScope.launch(task.context, block = task.block)
+        } catch (e: Exception) {
+            log.error("Failed to start command in guild {}", task.guildId, e)
+            null
+        }
+        if (job == null) {
+            onFinished(task.guildId)
+        } else {
+            job.invokeOnCompletion { onFinished(task.guildId) }
+        }
+    }
+
+    private fun onFinished(guildId: Long) {
+        synchronized(lock) {
+            running--
+            val guildRunning = runningPerGuild.getValue(guildId) - 1
+            if (guildRunning == 0) runningPerGuild.remove(guildId) else runningPerGuild[guildId] = guildRunning
+            if (guildRunning == MAX_RUNNING_PER_GUILD - 1 && queues.containsKey(guildId)) readyGuilds.addLast(guildId)
+            Metrics.commandsRunning.set(running.toDouble())
+        }
+        drain()
+    }
+
+    /**
+     * Runs command coroutines on the command pool, and keeps track of how many of them occupy or wait for a thread, so
+     * that new commands are admitted as soon as a thread frees up.
+     */
+    private inner class AdmissionDispatcher : CoroutineDispatcher() {
+        override fun dispatch(context: CoroutineContext, block: Runnable) {
+            activeDispatches.incrementAndGet()
+            try {
+                commandPool.execute {
+                    try {
+                        block.run()
+                    } finally {
+                        if (activeDispatches.decrementAndGet() < COMMAND_THREADS && queued > 0) drain()
+                    }
+                }
+            } catch (e: RejectedExecutionException) {
+                // shutting down, let the coroutine finish elsewhere
+                activeDispatches.decrementAndGet()
+                Dispatchers.Default.dispatch(context, block)
+            }
+        }
+    }
+
+    private fun pool(threads: Int, name: String): ThreadPoolExecutor {
+        val threadCounter = AtomicInteger()
+        return ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, LinkedBlockingQueue()) { r ->
+            Thread(r, "$name-${threadCounter.incrementAndGet()}")
+        }.apply { allowCoreThreadTimeOut(true) }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        commandPool.shutdown()
+        blockingPool.shutdown()
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.commandmeta
+
+/**
+ * Single pass scanner that detects whether a message is addressed at us by mention or prefix, and locates the command
+ * trigger and the arguments in it. Everything is kept as offsets into the original message; substrings are only
+ * created when they are asked for.
+ */
+object CommandTokenizer {
+
+    const val TYPE_MENTION = "mention"
+    const val TYPE_DEFAULT = "default"
+    const val TYPE_CUSTOM = "custom"
+
+    //what a lone mention of us triggers
+    private const val MENTION_ONLY_INPUT = CommandInitializer.PREFIX_COMM_NAME
+
+    /**
+     * @param botId         our user id as a string
+     * @param defaultPrefix the default prefix of the bot
+     * @param prefix        provides the prefix of the guild; only called if the message does not start with a mention of us
+     * @return the tokens of the command, or null if the message is not addressed at us or contains no trigger
+     */
+    inline fun tokenize(content: String, botId: String, defaultPrefix: String, prefix: () -> String): CommandTokens? {
+        val mentionEnd = mentionEnd(content, botId)
+        if (mentionEnd >= 0) {
+            return tokenizeInput(content, mentionEnd, TYPE_MENTION)
+        }
+
+        val guildPrefix = prefix()
+        if (content.startsWith(guildPrefix)) {
+            return tokenizeInput(content, guildPrefix.length,
+                    if (guildPrefix == defaultPrefix) TYPE_DEFAULT else TYPE_CUSTOM)
+        }
+
+        //hardcoded check for the help or prefix command that is always displayed as FredBoat status
+        if (startsWithCommand(content, defaultPrefix, CommandInitializer.HELP_COMM_NAME)
+                || startsWithCommand(content, defaultPrefix, CommandInitializer.PREFIX_COMM_NAME)) {
+            return tokenizeInput(content, defaultPrefix.length, TYPE_DEFAULT)
+        }
+
+        //no match neither mention nor custom/default prefix
+        return null
+    }
+
+    /**
+     * @return the index right after a leading <@botId> or <@!botId> mention, or -1 if the content doesn't start with one
+     */
+    fun mentionEnd(content: String, botId: String): Int {
+        if (!content.startsWith("<@")) return -1
+        var idStart = 2
+        if (content.length > idStart && content[idStart] == '!') idStart++
+        val idEnd = idStart + botId.length
+        if (content.length <= idEnd || content[idEnd] != '>') return -1
+        if (!content.regionMatches(idStart, botId, 0, botId.length)) return -1
+        return idEnd + 1
+    }
+
+    fun startsWithCommand(content: String, prefix: String, command: String): Boolean {
+        return content.startsWith(prefix) && content.regionMatches(prefix.length, command, 0, command.length)
+    }
+
+    /**
+     * @param start where the input after the mention or prefix begins
+     */
+    fun tokenizeInput(content: String, start: Int, prefixType: String): CommandTokens? {
+        // eliminate possible whitespace between the mention/prefix and the rest of the input
+        var inputStart = start
+        var inputEnd = content.length
+        while (inputStart < inputEnd && content[inputStart] <= ' ') inputStart++
+        while (inputEnd > inputStart && content[inputEnd - 1] <= ' ') inputEnd--
+
+        if (inputStart == inputEnd) {
+            return if (prefixType == TYPE_MENTION) { //just a mention and nothing else? trigger the prefix command
+                CommandTokens(MENTION_ONLY_INPUT, prefixType, 0, MENTION_ONLY_INPUT.length,
+                        MENTION_ONLY_INPUT.length, MENTION_ONLY_INPUT.length)
+            } else {
+                null //no command will be detectable from an empty input
+            }
+        }
+
+        // unicode whitespace separates the trigger from the arguments, same as in the arguments themselves
+        var triggerStart = inputStart
+        while (triggerStart < inputEnd && Character.isSpaceChar(content[triggerStart])) triggerStart++
+        var triggerEnd = triggerStart
+        while (triggerEnd < inputEnd && !Character.isSpaceChar(content[triggerEnd])) triggerEnd++
+        if (triggerStart == triggerEnd) {
+            return null
+        }
+
+        var argsStart = triggerEnd
+        while (argsStart < inputEnd && content[argsStart] <= ' ') argsStart++
+
+        return CommandTokens(content, prefixType, triggerStart, triggerEnd, argsStart, inputEnd)
+    }
+}
+
+/**
+ * Trigger and arguments of a command, as offsets into the message they were found in
+ */
+class CommandTokens(
+        val content: String,
+        val prefixType: String,
+        val triggerStart: Int,
+        val triggerEnd: Int,
+        val rawArgsStart: Int,
+        val rawArgsEnd: Int
+) {
+    val isMention: Boolean
+        get() = prefixType == CommandTokenizer.TYPE_MENTION
+
+    private var _trigger: String? = null
+    private var _rawArgs: String? = null
+    private var _args: Array<String>? = null
+
+    /** the command trigger, as typed by the user */
+    val trigger: String
+        get() = _trigger ?: content.substring(triggerStart, triggerEnd).also { _trigger = it }
+
+    /** the arguments excluding prefix and trigger, trimmed */
+    val rawArgs: String
+        get() = _rawArgs ?: content.substring(rawArgsStart, rawArgsEnd).also { _rawArgs = it }
+
+    /** the arguments split by unicode whitespace, excluding prefix and trigger */
+    val args: Array<String>
+        get() = _args ?: splitArgs().also { _args = it }
+
+    private fun splitArgs(): Array<String> {
+        val result = ArrayList<String>()
+        var i = rawArgsStart
+        while (i < rawArgsEnd) {
+            while (i < rawArgsEnd && Character.isSpaceChar(content[i])) i++
+            val tokenStart = i
+            while (i < rawArgsEnd && !Character.isSpaceChar(content[i])) i++
+            if (i > tokenStart) result.add(content.substring(tokenStart, i))
+        }
+        return result.toTypedArray()
+    }
+}
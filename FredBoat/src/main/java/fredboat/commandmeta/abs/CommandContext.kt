@@ -25,7 +25,9 @@
 
 package fredboat.commandmeta.abs
 
+import fredboat.commandmeta.CommandTokens
 import fredboat.definitions.Module
+import fredboat.feature.metrics.CommandTrace
 import fredboat.main.Launcher
 import fredboat.messaging.internal.Context
 import fredboat.sentinel.*
@@ -38,12 +40,27 @@ class CommandContext(
         override val textChannel: TextChannel,
         override val member: Member,
         val msg: Message,
-        val isMention: Boolean,               // whether a mention was used to trigger this command
-        val trigger: String,                  // the command trigger, e.g. "play", or "p", or "pLaY", whatever the user typed
-        val args: Array<String>,              // the arguments split by whitespace, excluding prefix and trigger
-        val rawArgs: String,                  // raw arguments excluding prefix and trigger, trimmed
+        private val tokens: CommandTokens,    // offsets of trigger and arguments in the message
         val command: Command) : Context() {
 
+    override var trace: CommandTrace? = null
+
+    // whether a mention was used to trigger this command
+    val isMention: Boolean
+        get() = tokens.isMention
+
+    // the command trigger, e.g. "play", or "p", or "pLaY", whatever the user typed
+    val trigger: String
+        get() = tokens.trigger
+
+    // the arguments split by whitespace, excluding prefix and trigger
+    val args: Array<String>
+        get() = tokens.args
+
+    // raw arguments excluding prefix and trigger, trimmed
+    val rawArgs: String
+        get() = tokens.rawArgs
+
     /**
      * @return an adjusted list of mentions in case the prefix mention is used to exclude it. This method should always
      * be used over Message#getMentions()
@@ -49,8 +49,10 @@ import fredboat.audio.source.botb.BotbAudioSourceManager
 import fredboat.audio.source.PlaylistImportSourceManager
 import fredboat.audio.source.SpotifyPlaylistSourceManager
 import fredboat.audio.source.botb.BotbJsonDataLoader
+import fredboat.commandmeta.CommandScheduler
 import fredboat.config.property.AppConfig
 import fredboat.config.property.AudioSourcesConfig
+import fredboat.feature.metrics.collectors.ThreadPoolCollector
 import fredboat.util.rest.SpotifyAPIWrapper
 import fredboat.util.rest.TrackSearcher
 import org.apache.http.client.config.CookieSpecs
@@ -93,7 +95,13 @@ class AudioPlayerManagerConfiguration {
     @Bean
     fun allPlayerManagers(@Qualifier("loadAudioPlayerManager") load: AudioPlayerManager,
                           @Qualifier("searchAudioPlayerManager") search: AudioPlayerManager,
-                          @Qualifier("pasteAudioPlayerManager") paste: AudioPlayerManager): Set<AudioPlayerManager> {
+                          @Qualifier("pasteAudioPlayerManager") paste: AudioPlayerManager,
+                          threadPoolCollector: ThreadPoolCollector): Set<AudioPlayerManager> {
+        mapOf("load" to load, "search" to search, "paste" to paste).forEach { name, manager ->
+            ThreadPoolCollector.getLavaplayerItemLoaderPool(manager)?.let {
+                threadPoolCollector.addPool("lavaplayer-$name-item-loader", it)
+            }
+        }
         return setOf(load, search, paste)
     }
 
@@ -258,8 +266,9 @@ class AudioPlayerManagerConfiguration {
 
     @Bean(destroyMethod = "")
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
-    fun spotifyPlaylistSourceManager(trackSearcher: TrackSearcher, spotifyAPIWrapper: SpotifyAPIWrapper) =
-            SpotifyPlaylistSourceManager(trackSearcher, spotifyAPIWrapper)
+    fun spotifyPlaylistSourceManager(trackSearcher: TrackSearcher, spotifyAPIWrapper: SpotifyAPIWrapper,
+                                     commandScheduler: CommandScheduler) =
+            SpotifyPlaylistSourceManager(trackSearcher, spotifyAPIWrapper, commandScheduler)
 
     @Bean(destroyMethod = "")
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
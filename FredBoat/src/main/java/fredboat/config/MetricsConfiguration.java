@@ -24,6 +24,7 @@
 
 package fredboat.config;
 
+import fredboat.feature.metrics.collectors.TimedCollector;
 import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import io.prometheus.client.logback.InstrumentedAppender;
 import org.springframework.context.annotation.Bean;
@@ -38,7 +39,9 @@ public class MetricsConfiguration {
     //guava cache metrics
     @Bean
     public CacheMetricsCollector cacheMetrics() {
-        return new CacheMetricsCollector().register();
+        CacheMetricsCollector cacheMetrics = new CacheMetricsCollector();
+        new TimedCollector("guava_caches", cacheMetrics).register();
+        return cacheMetrics;
     }
 
     @Bean
@@ -26,6 +26,7 @@ package fredboat.config;
 
 import fredboat.config.property.BackendConfig;
 import fredboat.feature.metrics.Metrics;
+import fredboat.feature.metrics.jfr.BackendCallEvent;
 import fredboat.metrics.OkHttpEventMetrics;
 import fredboat.util.rest.Http;
 import org.apache.commons.io.IOUtils;
@@ -34,13 +35,17 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpRequest;
 import org.springframework.http.client.BufferingClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
 import org.springframework.http.converter.json.GsonHttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+
 /**
  * Created by napster on 16.03.18.
  */
@@ -71,10 +76,28 @@ public class RestTemplateConfiguration {
                         response.getBody().reset();
                     }
                     return response;
-                }))
+                }), RestTemplateConfiguration::recordBackendCall)
                 .build();
     }
 
+    /**
+     * Emits a flight recorder event for each backend call
+     */
+    private static ClientHttpResponse recordBackendCall(HttpRequest req, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        BackendCallEvent event = new BackendCallEvent();
+        event.method = req.getMethodValue();
+        event.path = req.getURI().getPath();
+        event.begin();
+        try {
+            ClientHttpResponse response = execution.execute(req, body);
+            event.status = response.getRawStatusCode();
+            return response;
+        } finally {
+            event.commit();
+        }
+    }
+
     /**
      * @return a ClientHttpRequestFactory to use with our quarterdeck rest template. It will be a buffering one if debug
      * logs are enabled, so that we can read the body of the respone more than once and log it.
@@ -70,6 +70,20 @@ public interface AppConfig {
 
     int getPlayerLimit();
 
+    /**
+     * @return the maximum amount of guilds to keep subscribed, or 0 for no limit
+     */
+    default int getGuildCacheMaxGuilds() {
+        return 0;
+    }
+
+    /**
+     * @return the maximum amount of members, channels and roles of all subscribed guilds together, or 0 for no limit
+     */
+    default long getGuildCacheMaxEntities() {
+        return 0;
+    }
+
     /**
      * @return empty string for default status
      */
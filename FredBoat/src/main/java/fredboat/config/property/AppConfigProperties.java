@@ -55,6 +55,8 @@ public class AppConfigProperties implements AppConfig {
     private int shardCount = 1;
     //undocumented
     private int playerLimit = -1;
+    private int guildCacheMaxGuilds = 0;
+    private long guildCacheMaxEntities = 0;
     private RatelimitConfig ratelimit;
 
     private boolean distributionLogged = false;
@@ -106,6 +108,16 @@ public class AppConfigProperties implements AppConfig {
         return playerLimit;
     }
 
+    @Override
+    public int getGuildCacheMaxGuilds() {
+        return guildCacheMaxGuilds;
+    }
+
+    @Override
+    public long getGuildCacheMaxEntities() {
+        return guildCacheMaxEntities;
+    }
+
     @Override
     public int getShardCount() {
         return shardCount;
@@ -157,6 +169,14 @@ public class AppConfigProperties implements AppConfig {
         this.playerLimit = playerLimit;
     }
 
+    public void setGuildCacheMaxGuilds(int guildCacheMaxGuilds) {
+        this.guildCacheMaxGuilds = guildCacheMaxGuilds;
+    }
+
+    public void setGuildCacheMaxEntities(long guildCacheMaxEntities) {
+        this.guildCacheMaxEntities = guildCacheMaxEntities;
+    }
+
     public void setShardCount(int shardCount) {
         this.shardCount = shardCount;
     }
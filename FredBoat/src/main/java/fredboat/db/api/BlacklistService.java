@@ -37,5 +37,11 @@ public interface BlacklistService {
 
     BlacklistEntry mergeBlacklistEntry(BlacklistEntry entry) throws BackendException;
 
+    /**
+     * Like {@link #mergeBlacklistEntry(BlacklistEntry)}, but the entry is written to the backend asynchronously.
+     * Subsequent fetches will see the new value right away.
+     */
+    BlacklistEntry mergeBlacklistEntryDeferred(BlacklistEntry entry);
+
     void deleteBlacklistEntry(long id) throws BackendException;
 }
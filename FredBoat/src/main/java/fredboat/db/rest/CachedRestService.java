@@ -28,11 +28,17 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import fredboat.db.transfer.TransferObject;
+import fredboat.feature.metrics.Metrics;
 import fredboat.util.rest.CacheUtil;
 import io.prometheus.client.guava.cache.CacheMetricsCollector;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -42,6 +48,13 @@ public abstract class CachedRestService<I extends Serializable, E extends Transf
 
     protected final LoadingCache<I, E> cache;
 
+    //merges that have been applied to the cache, but not yet been sent to the backend. keyed by id, so that repeated
+    // merges of the same entity between two flushes result in a single request
+    protected final Map<I, E> pendingMerges = new ConcurrentHashMap<>();
+    //ids whose pending merge is being sent to the backend right now -> whether they have been deleted in the meantime
+    private final Map<I, Boolean> inFlightMerges = new ConcurrentHashMap<>();
+    private final String cacheName;
+
     /**
      * Create the CachedRestRepo using a default cache
      */
@@ -60,10 +73,17 @@ public abstract class CachedRestService<I extends Serializable, E extends Transf
         super(path, entityClass, backendRestTemplate);
         this.cache = cacheBuilder.recordStats().build(CacheLoader.from(super::fetch));
         cacheMetrics.addCache(cacheName, cache);
+        this.cacheName = cacheName;
     }
 
+    /**
+     * Deleting wins over merges that are pending or being flushed right now: those are dropped, or undone once they
+     * have reached the backend.
+     */
     @Override
     protected void delete(I id) {
+        pendingMerges.remove(id);
+        inFlightMerges.replace(id, false, true);
         try {
             super.delete(id);
         } finally {
@@ -73,13 +93,124 @@ public abstract class CachedRestService<I extends Serializable, E extends Transf
 
     @Override
     public E fetch(I id) {
+        E pending = pendingMerges.get(id);
+        if (pending != null) {
+            return pending;
+        }
         return CacheUtil.getUncheckedUnwrapped(cache, id);
     }
 
     @Override
     public E merge(E entity) {
+        pendingMerges.remove(entity.getId()); //superseded by this merge
         E merged = super.merge(entity);
         cache.put(merged.getId(), merged);
         return merged;
     }
+
+    /**
+     * Write-behind variant of {@link #merge(TransferObject)}: the entity is visible to subsequent fetches right away,
+     * but only sent to the backend by the next {@link #flushPendingMerges(int)}. Repeated merges of the same entity
+     * in between two flushes are coalesced into a single request.
+     * <p>
+     * Failing writes are only logged, so this is meant for frequent writes whose loss is tolerable, like rate limit
+     * hits. Changes requested by users should use {@link #merge(TransferObject)}, so that failures reach them.
+     *
+     * @return the entity that was passed in
+     */
+    public E mergeDeferred(E entity) {
+        cache.put(entity.getId(), entity);
+        if (pendingMerges.put(entity.getId(), entity) != null) {
+            Metrics.writeBehindMerges.labels(cacheName, "coalesced").inc();
+        } else {
+            Metrics.writeBehindMerges.labels(cacheName, "queued").inc();
+        }
+        return entity;
+    }
+
+    /**
+     * Send up to maxBatchSize pending merges to the backend. Merges that failed because the backend is unavailable are
+     * requeued, unless a newer version of the entity has been queued in the meantime. Merges that the backend rejected
+     * are dropped, so that a single bad entity does not hold up all the others. Flushes don't run concurrently, so
+     * each entity has at most one merge in flight.
+     *
+     * @return amount of entities that were merged successfully
+     */
+    public synchronized int flushPendingMerges(int maxBatchSize) {
+        int flushed = 0;
+        Iterator<Map.Entry<I, E>> it = pendingMerges.entrySet().iterator();
+        while (it.hasNext() && flushed < maxBatchSize) {
+            Map.Entry<I, E> entry = it.next();
+            I id = entry.getKey();
+            E entity = entry.getValue();
+            //mark it as in flight before taking it out of the pending merges, so that a delete sees it in either
+            inFlightMerges.put(id, false);
+            //a newer version has replaced this one concurrently, or it has been deleted, leave it for the next pass
+            if (!pendingMerges.remove(id, entity)) {
+                inFlightMerges.remove(id);
+                continue;
+            }
+
+            E merged;
+            try {
+                //cached entities may be mutated in place by their users while holding their monitor (see Blacklist),
+                // so hold it too while the entity is being serialized
+                //noinspection SynchronizationOnLocalVariableOrMethodParameter
+                synchronized (entity) {
+                    merged = super.merge(entity);
+                }
+            } catch (BackendException e) {
+                if (Boolean.TRUE.equals(inFlightMerges.remove(id))) {
+                    continue; //deleted in the meantime, don't bring it back
+                }
+                if (isRetryable(e)) {
+                    pendingMerges.putIfAbsent(id, entity);
+                    Metrics.writeBehindMerges.labels(cacheName, "failed").inc();
+                    log.warn("Failed to flush pending merge of entity with id {} of class {}, will retry", id, entityClass, e);
+                    break; //backend is likely unavailable, no point in hammering it with the rest of the batch
+                }
+                //retrying won't change the outcome. forget our version, so the next fetch returns what the backend has
+                if (!pendingMerges.containsKey(id)) {
+                    cache.invalidate(id);
+                }
+                Metrics.writeBehindMerges.labels(cacheName, "rejected").inc();
+                log.error("Backend rejected pending merge of entity with id {} of class {}, dropping it", id, entityClass, e);
+                continue;
+            }
+            if (Boolean.TRUE.equals(inFlightMerges.remove(id))) {
+                //deleted while we were talking to the backend, which may just have recreated it
+                undoMerge(id);
+                continue;
+            }
+            //don't overwrite an even newer version that was queued while we were talking to the backend
+            if (!pendingMerges.containsKey(id)) {
+                cache.put(id, merged);
+            }
+            Metrics.writeBehindMerges.labels(cacheName, "flushed").inc();
+            flushed++;
+        }
+        return flushed;
+    }
+
+    private void undoMerge(I id) {
+        try {
+            super.delete(id);
+        } catch (BackendException e) {
+            log.error("Failed to delete entity with id {} of class {} again after a concurrent merge", id, entityClass, e);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    /**
+     * @return true if the backend could not be reached or failed on its side, false if it rejected the request
+     */
+    private static boolean isRetryable(BackendException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof ResourceAccessException || cause instanceof HttpServerErrorException;
+    }
+
+    public int getPendingMergesCount() {
+        return pendingMerges.size();
+    }
 }
@@ -57,6 +57,11 @@ public class RestBlacklistService extends CachedRestService<Long, BlacklistEntry
         return fetchUserFriendly(() -> merge(entry));
     }
 
+    @Override
+    public BlacklistEntry mergeBlacklistEntryDeferred(BlacklistEntry entry) {
+        return mergeDeferred(entry);
+    }
+
     @Override
     public void deleteBlacklistEntry(long id) {
         doUserFriendly(() -> delete(id));
@@ -28,6 +28,7 @@ import fredboat.config.property.BackendConfig
 import fredboat.db.FriendlyEntityService.fetchUserFriendly
 import fredboat.db.api.GuildPermsService
 import fredboat.db.transfer.GuildPermissions
+import fredboat.perms.PermissionLevelCache
 import fredboat.sentinel.Guild
 import io.prometheus.client.guava.cache.CacheMetricsCollector
 import org.springframework.stereotype.Component
@@ -50,6 +51,8 @@ class RestGuildPermsService(backendConfig: BackendConfig, quarterdeckRestTemplat
     }
 
     override fun transformGuildPerms(guild: Guild, transformation: Function<GuildPermissions, GuildPermissions>): GuildPermissions {
-        return fetchUserFriendly { merge(transformation.apply(fetchGuildPermissions(guild))) }
+        val guildPermissions = fetchUserFriendly { merge(transformation.apply(fetchGuildPermissions(guild))) }
+        PermissionLevelCache.invalidateGuild(guild.id)
+        return guildPermissions
     }
 }
@@ -25,8 +25,6 @@
 package fredboat.db.transfer;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
-import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
@@ -34,8 +32,6 @@ import fredboat.definitions.SearchProvider;
 import org.apache.commons.lang3.SerializationUtils;
 
 import javax.annotation.Nullable;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -63,7 +59,7 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
                         AudioPlaylist searchResult) {
         this.searchResultId = new SearchResultId(provider, searchTerm);
         this.timestamp = System.currentTimeMillis();
-        this.serializedSearchResult = SerializationUtils.serialize(new SearchResult.SerializableAudioPlaylist(playerManager, searchResult));
+        this.serializedSearchResult = SearchResultCodec.encode(playerManager, searchResult);
     }
 
     @Override
@@ -95,13 +91,26 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
         this.timestamp = timestamp;
     }
 
-    public AudioPlaylist getSearchResult(AudioPlayerManager playerManager) {
+    /**
+     * The tracks of the returned playlist are decoded lazily on access, see {@link SearchResultCodec}.
+     *
+     * @throws IOException if the stored search result is malformed
+     */
+    public AudioPlaylist getSearchResult(AudioPlayerManager playerManager) throws IOException {
+        if (SearchResultCodec.isCompact(serializedSearchResult)) {
+            return SearchResultCodec.decode(playerManager, serializedSearchResult);
+        }
+        //written by an older version using java serialization
         SerializableAudioPlaylist sap = SerializationUtils.deserialize(serializedSearchResult);
         return sap.decode(playerManager);
     }
 
     public void setSearchResult(AudioPlayerManager playerManager, AudioPlaylist searchResult) {
-        this.serializedSearchResult = SerializationUtils.serialize(new SerializableAudioPlaylist(playerManager, searchResult));
+        this.serializedSearchResult = SearchResultCodec.encode(playerManager, searchResult);
+    }
+
+    public int getSerializedSize() {
+        return serializedSearchResult.length;
     }
 
     /**
@@ -156,7 +165,11 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
     }
 
 
-    private static class SerializableAudioPlaylist implements Serializable {
+    /**
+     * Legacy format, only kept around to read search results that were cached by older versions, and for comparison
+     * in benchmarks.
+     */
+    public static class SerializableAudioPlaylist implements Serializable {
         private static final long serialVersionUID = -6823555858689776338L;
 
         @Nullable
@@ -211,15 +224,7 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
         //may return null if the encoding fails or the input is null
         @Nullable
         private static byte[] encodeTrack(AudioPlayerManager playerManager, @Nullable AudioTrack track) {
-            if (track == null) {
-                return null;
-            }
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                playerManager.encodeTrack(new MessageOutput(baos), track);
-                return baos.toByteArray();
-            } catch (IOException ignored) {
-                return null;
-            }
+            return SearchResultCodec.encodeTrack(playerManager, track);
         }
 
         private static List<AudioTrack> decodeTracks(AudioPlayerManager playerManager, @Nullable byte[][] input) {
@@ -239,12 +244,7 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
         @Nullable
         private static AudioTrack decodeTrack(AudioPlayerManager playerManager, @Nullable byte[] input) {
             if (input == null) return null;
-            ByteArrayInputStream bais = new ByteArrayInputStream(input);
-            try {
-                return playerManager.decodeTrack(new MessageInput(bais)).decodedTrack;
-            } catch (IOException e) {
-                return null;
-            }
+            return SearchResultCodec.decodeTrack(playerManager, input, 0, input.length);
         }
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.db.transfer;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Compact binary format for cached search results.
+ * <p>
+ * Layout (version 1):
+ * <pre>
+ *   2 bytes  magic 'F' 'B' (java serialization streams start with 0xACED, so the formats can't be confused)
+ *   1 byte   version
+ *   1 byte   flags: 0x01 search result, 0x02 has name, 0x04 has selected track
+ *   utf      name, if present
+ *   varint   track count
+ *   per track: varint length, lavaplayer track encoding
+ *   varint length + lavaplayer track encoding of the selected track, if present
+ * </pre>
+ * Decoding only reads the header and the track offsets. Each track is decoded by lavaplayer when it is accessed for
+ * the first time, so the tracks of a result that are never shown or picked are never decoded.
+ */
+public final class SearchResultCodec {
+
+    private static final byte MAGIC_0 = 'F';
+    private static final byte MAGIC_1 = 'B';
+    static final byte VERSION = 1;
+
+    private static final int FLAG_SEARCH_RESULT = 0x01;
+    private static final int FLAG_HAS_NAME = 0x02;
+    private static final int FLAG_HAS_SELECTED = 0x04;
+
+    //this is a utility class
+    private SearchResultCodec() {
+    }
+
+    /**
+     * @return true if the input was written by this codec, false if it is of an unknown (or the legacy) format
+     */
+    public static boolean isCompact(@Nullable byte[] input) {
+        return input != null && input.length >= 4 && input[0] == MAGIC_0 && input[1] == MAGIC_1;
+    }
+
+    public static byte[] encode(AudioPlayerManager playerManager, AudioPlaylist playlist) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            String name = playlist.getName();
+            byte[] selected = encodeTrack(playerManager, playlist.getSelectedTrack());
+            int flags = 0;
+            if (playlist.isSearchResult()) flags |= FLAG_SEARCH_RESULT;
+            if (name != null) flags |= FLAG_HAS_NAME;
+            if (selected != null) flags |= FLAG_HAS_SELECTED;
+
+            out.writeByte(MAGIC_0);
+            out.writeByte(MAGIC_1);
+            out.writeByte(VERSION);
+            out.writeByte(flags);
+            if (name != null) {
+                out.writeUTF(name);
+            }
+
+            List<AudioTrack> tracks = playlist.getTracks();
+            byte[][] encoded = new byte[tracks.size()][];
+            int count = 0;
+            for (AudioTrack track : tracks) {
+                byte[] bytes = encodeTrack(playerManager, track);
+                if (bytes != null) {
+                    encoded[count++] = bytes;
+                }
+            }
+            writeVarInt(out, count);
+            for (int i = 0; i < count; i++) {
+                writeVarInt(out, encoded[i].length);
+                out.write(encoded[i]);
+            }
+            if (selected != null) {
+                writeVarInt(out, selected.length);
+                out.write(selected);
+            }
+        } catch (IOException e) {
+            //we are writing to memory, this should never happen
+            throw new IllegalStateException("Failed to encode search result", e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the header of the input is malformed or of an unsupported version
+     */
+    public static AudioPlaylist decode(AudioPlayerManager playerManager, byte[] input) throws IOException {
+        if (!isCompact(input)) {
+            throw new IOException("Input is not a compact search result");
+        }
+        if (input[2] != VERSION) {
+            throw new IOException("Unsupported search result format version " + input[2]);
+        }
+        int flags = input[3];
+        Reader reader = new Reader(input, 4);
+
+        String name = null;
+        if ((flags & FLAG_HAS_NAME) != 0) {
+            name = reader.readUtf();
+        }
+
+        int count = reader.readVarInt();
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = reader.readVarInt();
+            offsets[i] = reader.skip(lengths[i]);
+        }
+
+        AudioTrack selected = null;
+        if ((flags & FLAG_HAS_SELECTED) != 0) {
+            int length = reader.readVarInt();
+            selected = decodeTrack(playerManager, input, reader.skip(length), length);
+        }
+
+        return new BasicAudioPlaylist(name, new LazyTrackList(playerManager, input, offsets, lengths), selected,
+                (flags & FLAG_SEARCH_RESULT) != 0);
+    }
+
+    //may return null if the encoding fails or the input is null
+    @Nullable
+    static byte[] encodeTrack(AudioPlayerManager playerManager, @Nullable AudioTrack track) {
+        if (track == null) {
+            return null;
+        }
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            playerManager.encodeTrack(new MessageOutput(baos), track);
+            return baos.toByteArray();
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    //may return null if the decoding fails
+    @Nullable
+    static AudioTrack decodeTrack(AudioPlayerManager playerManager, byte[] input, int offset, int length) {
+        ByteArrayInputStream bais = new ByteArrayInputStream(input, offset, length);
+        try {
+            return playerManager.decodeTrack(new MessageInput(bais)).decodedTrack;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Thrown when a lazily decoded track turns out to be undecodable.
+     */
+    public static class TrackDecodingException extends RuntimeException {
+        private static final long serialVersionUID = 4290410612876522331L;
+
+        public TrackDecodingException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Decodes the tracks of the underlying buffer on first access and holds on to them afterwards.
+     */
+    private static class LazyTrackList extends AbstractList<AudioTrack> {
+
+        private final AudioPlayerManager playerManager;
+        private final byte[] input;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final AudioTrack[] decoded;
+
+        private LazyTrackList(AudioPlayerManager playerManager, byte[] input, int[] offsets, int[] lengths) {
+            this.playerManager = playerManager;
+            this.input = input;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.decoded = new AudioTrack[offsets.length];
+        }
+
+        @Override
+        public synchronized AudioTrack get(int index) {
+            AudioTrack track = decoded[index];
+            if (track == null) {
+                track = decodeTrack(playerManager, input, offsets[index], lengths[index]);
+                if (track == null) {
+                    throw new TrackDecodingException("Failed to decode track " + index + " of a cached search result");
+                }
+                decoded[index] = track;
+            }
+            return track;
+        }
+
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+    }
+
+    /**
+     * Cursor over the header of an encoded search result
+     */
+    private static class Reader {
+        private final byte[] input;
+        private int position;
+
+        private Reader(byte[] input, int position) {
+            this.input = input;
+            this.position = position;
+        }
+
+        private int readVarInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= input.length) {
+                    throw new IOException("Unexpected end of input while reading a varint");
+                }
+                byte b = input[position++];
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private String readUtf() throws IOException {
+            if (position + 2 > input.length) {
+                throw new IOException("Unexpected end of input while reading a string");
+            }
+            int length = ((input[position] & 0xFF) << 8) | (input[position + 1] & 0xFF);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(input, position, length + 2));
+            String result = in.readUTF();
+            position += length + 2;
+            return result;
+        }
+
+        //returns the position before skipping
+        private int skip(int length) throws IOException {
+            if (length < 0 || position + length > input.length) {
+                throw new IOException("Unexpected end of input");
+            }
+            int start = position;
+            position += length;
+            return start;
+        }
+    }
+}
@@ -28,6 +28,7 @@ package fredboat.event
 import com.fredboat.sentinel.entities.LifecycleEventEnum
 import com.fredboat.sentinel.entities.ShardLifecycleEvent
 import fredboat.config.property.EventLoggerConfig
+import fredboat.feature.metrics.collectors.ThreadPoolCollector
 import fredboat.main.ShutdownHandler
 import fredboat.sentinel.Guild
 import fredboat.util.Emojis
@@ -44,6 +45,7 @@ import java.util.*
 import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.Executors
+import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
@@ -59,14 +61,16 @@ import java.util.concurrent.atomic.AtomicInteger
 @Component
 class EventLogger(
         eventLoggerConfig: EventLoggerConfig,
-        shutdownHandler: ShutdownHandler
+        shutdownHandler: ShutdownHandler,
+        threadPoolCollector: ThreadPoolCollector
 ) : SentinelEventHandler() {
 
     companion object {
         private val log: Logger = LoggerFactory.getLogger(EventLogger::class.java)
     }
 
-    private val scheduler = Executors.newSingleThreadScheduledExecutor { runnable -> Thread(runnable, "eventlogger") }
+    // Not newSingleThreadScheduledExecutor, which hides the pool from the ThreadPoolCollector
+    private val scheduler = Executors.newScheduledThreadPool(1) { runnable -> Thread(runnable, "eventlogger") }
     private val eventLogWebhook: Webhook?
     private val guildStatsWebhook: Webhook?
 
@@ -123,6 +127,7 @@ class EventLogger(
     }
 
     init {
+        threadPoolCollector.addPool("eventlogger", scheduler as ThreadPoolExecutor)
         Runtime.getRuntime().addShutdownHook(Thread(createShutdownHook(shutdownHandler), EventLogger::class.java.simpleName + " shutdownhook"))
 
         val eventLoggerWebhookUrl = eventLoggerConfig.eventLogWebhook
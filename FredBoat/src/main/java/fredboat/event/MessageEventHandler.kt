@@ -33,21 +33,24 @@ import fredboat.command.info.StatsCommand
 import fredboat.commandmeta.CommandContextParser
 import fredboat.commandmeta.CommandInitializer
 import fredboat.commandmeta.CommandManager
+import fredboat.commandmeta.CommandScheduler
 import fredboat.commandmeta.abs.CommandContext
 import fredboat.config.property.AppConfigProperties
 import fredboat.definitions.PermissionLevel
+import fredboat.feature.metrics.CommandTrace
 import fredboat.feature.metrics.Metrics
+import fredboat.feature.metrics.jfr.CommandExecutionEvent
 import fredboat.perms.Permission.MESSAGE_READ
 import fredboat.perms.Permission.MESSAGE_WRITE
 import fredboat.perms.PermissionSet
 import fredboat.perms.PermsUtil
+import fredboat.sentinel.GuildCache
 import fredboat.sentinel.InternalGuild
 import fredboat.sentinel.Sentinel
 import fredboat.sentinel.User
 import fredboat.sentinel.getGuild
 import fredboat.util.ratelimit.Ratelimiter
 import io.prometheus.client.guava.cache.CacheMetricsCollector
-import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -60,7 +63,9 @@ class MessageEventHandler(
         private val ratelimiter: Ratelimiter,
         private val commandContextParser: CommandContextParser,
         private val commandManager: CommandManager,
+        private val commandScheduler: CommandScheduler,
         private val appConfig: AppConfigProperties,
+        private val guildCache: GuildCache,
         cacheMetrics: CacheMetricsCollector
 ) : SentinelEventHandler() {
 
@@ -78,14 +83,22 @@ class MessageEventHandler(
     }
 
     override fun onGuildMessage(event: MessageReceivedEvent) {
+        val receivedAt = System.nanoTime()
+        if (sentinel.selfUser.id == event.author) log.info(if(event.content.isBlank()) "<empty>" else event.content)
+        if (event.fromBot) return
+
+        //most messages are just chatter, don't bother launching anything for those
+        if (!commandContextParser.isCommandCandidate(event.content, event.guild)) {
+            Metrics.messagesPrefiltered.inc()
+            return
+        }
+
+        //only candidates get here, so chatter never pays for the blacklist lookup
         if (ratelimiter.isBlacklisted(event.author)) {
             Metrics.blacklistedMessagesReceived.inc()
             return
         }
 
-        if (sentinel.selfUser.id == event.author) log.info(if(event.content.isBlank()) "<empty>" else event.content)
-        if (event.fromBot) return
-
         //Preliminary permission filter to avoid a ton of parsing
         //Let messages pass on to parsing that contain "help" since we want to answer help requests even from channels
         // where we can't talk in
@@ -93,11 +106,14 @@ class MessageEventHandler(
         if (permissions hasNot (MESSAGE_READ + MESSAGE_WRITE)
                 && !event.content.contains(CommandInitializer.HELP_COMM_NAME)) return
 
-        GlobalScope.launch {
+        // Only traced from here on, most messages don't get this far
+        val trace = CommandTrace(receivedAt)
+        commandScheduler.cpuScope.launch(trace) {
+            trace.mark("dispatch")
             val context = commandContextParser.parse(event) ?: return@launch
 
             // Renew the time to prevent invalidation
-            (context.guild as InternalGuild).lastUsed = System.currentTimeMillis()
+            guildCache.touch(context.guild as InternalGuild)
             log.info(event.content)
 
             //ignore all commands in channels where we can't write, except for the help command
@@ -106,21 +122,36 @@ class MessageEventHandler(
                 return@launch
             }
 
+            trace.command = context.command.javaClass.simpleName
+            context.trace = trace
+            trace.mark("checks")
             Metrics.commandsReceived.labels(context.command.javaClass.simpleName).inc()
 
+            // Parsing never blocks, but everything from here on may, so it goes through the bounded scheduler
+            val accepted = commandScheduler.submit(context.guild.id, trace) {
+                trace.mark("scheduler_wait")
+                try {
+                    //ignore commands of disabled modules for plebs
+                    //BOT_ADMINs can always use all commands everywhere
+                    val module = context.command.module
+                    if (module != null
+                            && !context.enabledModules.contains(module)
+                            && !PermsUtil.checkPerms(PermissionLevel.BOT_ADMIN, context.member)) {
+                        log.debug("Ignoring command {} because its module {} is disabled",
+                                context.command.name, module.name)
+                        return@submit
+                    }
+                    trace.mark("module_check")
 
-            //ignore commands of disabled modules for plebs
-            //BOT_ADMINs can always use all commands everywhere
-            val module = context.command.module
-            if (module != null
-                    && !context.enabledModules.contains(module)
-                    && !PermsUtil.checkPerms(PermissionLevel.BOT_ADMIN, context.member)) {
-                log.debug("Ignoring command {} because its module {} is disabled",
-                        context.command.name, module.name)
-                return@launch
+                    limitOrExecuteCommand(context, trace)
+                } finally {
+                    trace.finish()
+                }
+            }
+            if (!accepted) {
+                trace.finish()
+                commandScheduler.blockingScope.launch { context.reply(context.i18n("commandsBusy")) }
             }
-
-            limitOrExecuteCommand(context)
         }
     }
 
@@ -128,14 +159,25 @@ class MessageEventHandler(
      * Check the rate limit of the user and execute the command if everything is fine.
      * @param context Command context of the command to be invoked.
      */
-    private suspend fun limitOrExecuteCommand(context: CommandContext) {
+    private suspend fun limitOrExecuteCommand(context: CommandContext, trace: CommandTrace) {
         if (ratelimiter.isRatelimited(context, context.command)) {
             return
         }
-
-        Metrics.executionTime.labels(context.command.javaClass.simpleName).startTimer().use {
-            commandManager.prefixCalled(context)
+        trace.mark("ratelimit")
+
+        val event = CommandExecutionEvent()
+        event.command = context.command.javaClass.simpleName
+        event.guildId = context.guild.id
+        event.channelId = context.textChannel.id
+        event.begin()
+        try {
+            Metrics.executionTime.labels(context.command.javaClass.simpleName).startTimer().use {
+                commandManager.prefixCalled(context)
+            }
+        } finally {
+            event.commit()
         }
+        trace.mark("command")
         //NOTE: Some commands, like ;;mal, run async and will not reflect the real performance of FredBoat
         // their performance should be judged by the totalResponseTime metric instead
     }
@@ -158,14 +200,14 @@ class MessageEventHandler(
             //hack in / hardcode some commands; this is not meant to look clean
             val lowered = content.toLowerCase()
             if (lowered.contains("shard")) {
-                GlobalScope.launch {
+                commandScheduler.blockingScope.launch {
                     for (message in ShardsCommand.getShardStatus(author.sentinel, content)) {
                         author.sendPrivate(message).subscribe()
                     }
                 }
                 return
             } else if (lowered.contains("stats")) {
-                GlobalScope.launch {
+                commandScheduler.blockingScope.launch {
                     author.sendPrivate(StatsCommand.getStats(null)).subscribe()
                 }
                 return
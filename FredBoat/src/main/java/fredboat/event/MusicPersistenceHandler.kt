@@ -36,6 +36,7 @@ import fredboat.audio.player.MusicTextChannelProvider
 import fredboat.audio.player.PlayerRegistry
 import fredboat.audio.queue.AudioTrackContext
 import fredboat.audio.queue.SplitAudioTrackContext
+import fredboat.commandmeta.CommandScheduler
 import fredboat.config.property.AppConfig
 import fredboat.config.property.Credentials
 import fredboat.definitions.RepeatMode
@@ -43,7 +44,6 @@ import fredboat.feature.I18n
 import fredboat.sentinel.getGuild
 import fredboat.shared.constant.DistributionEnum
 import fredboat.shared.constant.ExitCodes
-import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
 import org.apache.commons.codec.binary.Base64
 import org.apache.commons.io.FileUtils
@@ -66,7 +66,8 @@ import java.util.function.BiConsumer
 class MusicPersistenceHandler(private val playerRegistry: PlayerRegistry, private val credentials: Credentials,
                               private val musicTextChannelProvider: MusicTextChannelProvider,
                               @param:Qualifier("loadAudioPlayerManager") private val audioPlayerManager: AudioPlayerManager,
-                              private val appConfig: AppConfig, private val allPlayerManagers: Set<AudioPlayerManager>
+                              private val appConfig: AppConfig, private val allPlayerManagers: Set<AudioPlayerManager>,
+                              private val commandScheduler: CommandScheduler
 ) : SentinelEventHandler() {
 
     companion object {
@@ -189,7 +190,7 @@ class MusicPersistenceHandler(private val playerRegistry: PlayerRegistry, privat
 
         //the current implementation of music persistence is not a good idea on big bots
         if (appConfig.shardCount <= 10 && appConfig.distribution != DistributionEnum.MUSIC) {
-            GlobalScope.launch {
+            commandScheduler.blockingScope.launch {
                 try {
                     reloadPlaylists(event.shard)
                 } catch (e: Exception) {
@@ -301,7 +302,7 @@ class MusicPersistenceHandler(private val playerRegistry: PlayerRegistry, privat
                 player.loadAll(tracks)
                 if (!isPaused) {
                     if (vc != null) {
-                        GlobalScope.launch {
+                        commandScheduler.blockingScope.launch {
                             try {
                                 player.joinChannel(vc)
                                 player.play()
@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
@@ -93,16 +94,47 @@ public class I18n {
 
         private final Language language;
         private final ResourceBundle props;
+        private final Map<String, MessageTemplate> templates = new HashMap<>();
 
         FredBoatLocale(Language language) throws MissingResourceException {
             this.language = language;
             props = ResourceBundle.getBundle("lang." + language.getCode(), language.getLocale());
+            for (String key : props.keySet()) {
+                try {
+                    templates.put(key, MessageTemplate.compile(props.getString(key)));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Malformed language entry for key {} in language {}", key, language.getCode());
+                }
+            }
         }
 
         public ResourceBundle getProps() {
             return props;
         }
 
+        /**
+         * @return the precompiled template for the key, or null if the key is missing or its entry is malformed
+         */
+        @Nullable
+        public MessageTemplate getTemplate(@Nonnull String key) {
+            return templates.get(key);
+        }
+
+        /**
+         * Formats the entry for the key, falling back to the default language if it is missing or malformed.
+         */
+        @Nonnull
+        public String format(@Nonnull String key, Object... params) {
+            MessageTemplate template = templates.get(key);
+            if (template == null) {
+                template = DEFAULT.templates.get(key);
+                if (template == null) {
+                    throw new MissingResourceException("No template for key " + key, getClass().getName(), key);
+                }
+            }
+            return template.format(params);
+        }
+
         public String getCode() {
             return language.getCode();
         }
@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package fredboat.feature;
+
+import javax.annotation.Nonnull;
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A translated message, parsed once into literal segments and argument indices, so that formatting it is a single pass
+ * over the segments. Follows the rules of {@link MessageFormat} for quoting and for the formatting of numbers and
+ * dates, so it is a drop in replacement for {@link MessageFormat#format(String, Object...)}.
+ * <p>
+ * Patterns that use format types or styles, like {0,number,#}, are handed off to MessageFormat as a whole.
+ */
+public final class MessageTemplate {
+
+    private final String pattern;
+    //literals[i] is followed by the argument argIndices[i]; the last literal is followed by nothing
+    private final String[] literals;
+    private final int[] argIndices;
+    private final int literalLength;
+    private final boolean delegate;
+
+    private MessageTemplate(String pattern, String[] literals, int[] argIndices, boolean delegate) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.argIndices = argIndices;
+        this.delegate = delegate;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pattern is malformed, same as MessageFormat would
+     */
+    @Nonnull
+    public static MessageTemplate compile(@Nonnull String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> argIndices = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(pattern.length());
+        boolean quoted = false;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append('\''); //doubled quotes are a literal quote, inside and outside of quoted parts
+                    i += 2;
+                    continue;
+                }
+                quoted = !quoted;
+                i++;
+            } else if (c == '{' && !quoted) {
+                int end = pattern.indexOf('}', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unmatched braces in the pattern.");
+                }
+                String argument = pattern.substring(i + 1, end);
+                if (!isIndex(argument)) {
+                    //format types, styles and subformats are rare enough to not bother parsing them ourselves
+                    new MessageFormat(pattern); //throws if malformed
+                    return new MessageTemplate(pattern, new String[0], new int[0], true);
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                argIndices.add(Integer.parseInt(argument));
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+
+        int[] indices = new int[argIndices.size()];
+        for (int j = 0; j < indices.length; j++) {
+            indices[j] = argIndices.get(j);
+        }
+        return new MessageTemplate(pattern, literals.toArray(new String[0]), indices, false);
+    }
+
+    private static boolean isIndex(String argument) {
+        //MessageFormat doesn't allow indices of 10000 and up
+        if (argument.isEmpty() || argument.length() > 4) return false;
+        for (int i = 0; i < argument.length(); i++) {
+            char c = argument.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    @Nonnull
+    public String format(Object... params) {
+        if (delegate) {
+            return MessageFormat.format(pattern, params);
+        }
+        if (argIndices.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder result = new StringBuilder(literalLength + 16 * argIndices.length);
+        for (int i = 0; i < argIndices.length; i++) {
+            result.append(literals[i]);
+            appendArgument(result, argIndices[i], params);
+        }
+        return result.append(literals[argIndices.length]).toString();
+    }
+
+    private static void appendArgument(StringBuilder result, int index, Object[] params) {
+        if (params == null || index >= params.length) {
+            result.append('{').append(index).append('}'); //same as MessageFormat, leave missing arguments in place
+            return;
+        }
+        Object param = params[index];
+        if (param instanceof String) {
+            result.append((String) param);
+        } else if (param instanceof Number) {
+            result.append(NumberFormat.getInstance(Locale.getDefault(Locale.Category.FORMAT)).format(param));
+        } else if (param instanceof Date) {
+            result.append(DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT,
+                    Locale.getDefault(Locale.Category.FORMAT)).format(param));
+        } else {
+            result.append(param); //null becomes "null"
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
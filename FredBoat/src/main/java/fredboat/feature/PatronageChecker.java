@@ -29,6 +29,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import fredboat.config.property.AppConfig;
+import fredboat.feature.metrics.collectors.ThreadPoolCollector;
 import fredboat.main.BotController;
 import fredboat.sentinel.Guild;
 import fredboat.util.rest.CacheUtil;
@@ -40,6 +41,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 @Component
@@ -53,7 +55,7 @@ public class PatronageChecker {
             .build(new Loader());
 
     // Meant to clear denial status fast so patrons can fix their patronage
-    private final ScheduledExecutorService denialCleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+    private final ScheduledExecutorService denialCleaner = Executors.newScheduledThreadPool(1, r -> {
         Thread thread = new Thread(r);
         thread.setDaemon(true);
         thread.setName("patreon-denial-cleaner");
@@ -62,8 +64,10 @@ public class PatronageChecker {
     private final AppConfig appConfig;
 
     // Pay attention to how we also clear the status early if we get an exception
-    public PatronageChecker(CacheMetricsCollector cacheMetrics, AppConfig appConfig) {
+    public PatronageChecker(CacheMetricsCollector cacheMetrics, AppConfig appConfig,
+                            ThreadPoolCollector threadPoolCollector) {
         this.appConfig = appConfig;
+        threadPoolCollector.addPool("patreon-denial-cleaner", (ThreadPoolExecutor) denialCleaner);
         denialCleaner.scheduleAtFixedRate(
                 () -> cache.asMap().replaceAll(
                         (__, status) -> status.isValid() || status.isCausedByError() ? status : null
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.feature.metrics
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Times the stages a guild message goes through, from being received from Sentinel until our reply to it has been
+ * delivered. A trace is opened once a message looks like a command, backdated to when the message was received, and
+ * carried along in the coroutine context of its handling. Stage durations are only published when [finish] is called,
+ * so messages that turn out to not be commands after all don't show up in the metrics.
+ *
+ * @param receivedAt [System.nanoTime] when the message was received
+ */
+class CommandTrace(private val receivedAt: Long = System.nanoTime()) : AbstractCoroutineContextElement(CommandTrace) {
+
+    companion object Key : CoroutineContext.Key<CommandTrace> {
+        private val log: Logger = LoggerFactory.getLogger(CommandTrace::class.java)
+
+        private val SLOW_THRESHOLD_NANOS = TimeUnit.SECONDS.toNanos(2)
+        // Log at most one slow command per interval, so a general slowdown doesn't flood the logs
+        private val SLOW_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10)
+        private val lastSlowLog = AtomicLong(System.nanoTime() - SLOW_LOG_INTERVAL_NANOS)
+
+        private const val MAX_STAGES = 16
+    }
+
+    private var lastMark = receivedAt
+    private val stageNames = arrayOfNulls<String>(MAX_STAGES)
+    private val stageNanos = LongArray(MAX_STAGES)
+    private var stageCount = 0
+    private val finished = AtomicBoolean(false)
+    private val replied = AtomicBoolean(false)
+    @Volatile
+    private var replyNanos = -1L
+
+    /** Simple name of the command class, once known */
+    @Volatile
+    var command: String? = null
+
+    /**
+     * Ends the current stage, which started with the previous mark or when the message was received.
+     */
+    @Synchronized
+    fun mark(stage: String) {
+        val now = System.nanoTime()
+        if (stageCount < MAX_STAGES) {
+            stageNames[stageCount] = stage
+            stageNanos[stageCount] = now - lastMark
+            stageCount++
+        }
+        lastMark = now
+    }
+
+    /**
+     * Called when a reply to the message has been delivered by Sentinel. Only the first reply counts.
+     */
+    fun onReplyDelivered() {
+        if (!replied.compareAndSet(false, true)) return
+        val nanos = System.nanoTime() - receivedAt
+        replyNanos = nanos
+        Metrics.commandReplyLatency.labels(command ?: "unknown").observe(nanos / 1_000_000_000.0)
+    }
+
+    /**
+     * Publishes the stage durations, and logs the trace if the command was slow.
+     */
+    fun finish() {
+        if (!finished.compareAndSet(false, true)) return
+        val total = System.nanoTime() - receivedAt
+        synchronized(this) {
+            for (i in 0 until stageCount) {
+                Metrics.commandStageDuration.labels(stageNames[i]).observe(stageNanos[i] / 1_000_000_000.0)
+            }
+        }
+
+        if (total < SLOW_THRESHOLD_NANOS) return
+        val last = lastSlowLog.get()
+        if (System.nanoTime() - last < SLOW_LOG_INTERVAL_NANOS || !lastSlowLog.compareAndSet(last, System.nanoTime())) {
+            return
+        }
+        log.info("Slow command {}: {}ms in total, {}", command, TimeUnit.NANOSECONDS.toMillis(total), toString())
+    }
+
+    @Synchronized
+    override fun toString(): String {
+        val builder = StringBuilder()
+        for (i in 0 until stageCount) {
+            if (i > 0) builder.append(", ")
+            builder.append(stageNames[i]).append(' ').append(TimeUnit.NANOSECONDS.toMillis(stageNanos[i])).append("ms")
+        }
+        val reply = replyNanos
+        builder.append(", first reply ")
+                .append(if (reply < 0) "pending" else "${TimeUnit.NANOSECONDS.toMillis(reply)}ms after receiving")
+        return builder.toString()
+    }
+}
@@ -27,16 +27,20 @@ package fredboat.feature.metrics;
 
 import ch.qos.logback.classic.LoggerContext;
 import fredboat.agent.FredBoatAgent;
+import fredboat.audio.source.SpotifyPlaylistSourceManager;
 import fredboat.command.info.HelpCommand;
 import fredboat.feature.metrics.collectors.FredBoatCollector;
 import fredboat.feature.metrics.collectors.ShardStatusCollector;
 import fredboat.feature.metrics.collectors.ThreadPoolCollector;
+import fredboat.feature.metrics.collectors.TimedCollector;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import io.prometheus.client.Summary;
 import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import io.prometheus.client.hotspot.DefaultExports;
 import io.prometheus.client.logback.InstrumentedAppender;
+import kotlinx.coroutines.Dispatchers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -73,15 +77,19 @@ public class Metrics {
         cacheMetrics.addCache("HELP_RECEIVED_RECENTLY", HelpCommand.HELP_RECEIVED_RECENTLY);
 
         try {
-            shardStatusCollector.register();
-            fredBoatCollector.register();
-            threadPoolCollector.register();
+            new TimedCollector("shard_status", shardStatusCollector).register();
+            new TimedCollector("fredboat", fredBoatCollector).register();
+            new TimedCollector("thread_pools", threadPoolCollector).register();
         } catch (IllegalArgumentException e) {
             log.error("This should not happen outside of tests.", e);
         }
 
         //register some of our "important" thread pools
         threadPoolCollector.addPool("agents-scheduler", (ThreadPoolExecutor) FredBoatAgent.getScheduler());
+        threadPoolCollector.addPool("agents-worker", FredBoatAgent.getWorkers());
+        threadPoolCollector.addPool("spotify-loader", (ThreadPoolExecutor) SpotifyPlaylistSourceManager.Companion.getLoader());
+        //used by the cpuScope of the CommandScheduler
+        threadPoolCollector.addDispatcher("coroutines-default", Dispatchers.getDefault());
 
         log.info("Metrics set up");
     }
@@ -124,6 +132,12 @@ public class Metrics {
             .labelNames("source") //cache, youtube, soundcloud etc
             .register();
 
+    public static final Counter searchCacheNormalizedHits = Counter.build()
+            .name("fredboat_music_search_cache_normalized_hits_total")
+            .help("Search cache hits that would have been misses without query normalization")
+            .labelNames("tier") //local-cache, cache
+            .register();
+
     public static final Counter tracksLoaded = Counter.build()
             .name("fredboat_music_tracks_loaded_total")
             .help("Total tracks loaded by the audio loader")
@@ -148,12 +162,59 @@ public class Metrics {
             .labelNames("type") // default, mention, custom
             .register();
 
+    public static final Counter messagesPrefiltered = Counter.build()
+            .name("fredboat_messages_prefiltered_total")
+            .help("Total guild messages that were dropped before parsing because they can't be a command")
+            .register();
+
+    public static final Counter permissionLevelLookups = Counter.build()
+            .name("fredboat_permission_level_lookups_total")
+            .help("Total lookups of the effective permission level of members")
+            .labelNames("result") // hit, miss
+            .register();
+
     public static final Counter commandsReceived = Counter.build()
             .name("fredboat_commands_received_total")
             .help("Total received commands. Some of these might get ratelimited.")
             .labelNames("class") // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
             .register();
 
+    public static final Gauge commandsQueued = Gauge.build()
+            .name("fredboat_commands_queued")
+            .help("Commands waiting in the command scheduler to be started")
+            .register();
+
+    public static final Gauge commandsRunning = Gauge.build()
+            .name("fredboat_commands_running")
+            .help("Commands started by the command scheduler that have not finished yet")
+            .register();
+
+    public static final Histogram commandQueueWait = Histogram.build()
+            .name("fredboat_command_queue_wait_seconds")
+            .help("Time commands spent waiting in the command scheduler before being started")
+            .buckets(.001, .005, .01, .05, .1, .5, 1, 5, 10)
+            .register();
+
+    public static final Counter commandsRejected = Counter.build()
+            .name("fredboat_commands_rejected_total")
+            .help("Total commands that were shed by the command scheduler because too many were queued")
+            .labelNames("reason") // global, guild
+            .register();
+
+    public static final Histogram commandStageDuration = Histogram.build()
+            .name("fredboat_command_stage_duration_seconds")
+            .help("Time commands spent in each stage of their handling, from being received until being executed")
+            .labelNames("stage") // dispatch, parse, guild_fetch, checks, scheduler_wait, module_check, ratelimit, command
+            .buckets(.0005, .001, .005, .01, .05, .1, .5, 1, 5, 10)
+            .register();
+
+    public static final Histogram commandReplyLatency = Histogram.build()
+            .name("fredboat_command_reply_latency_seconds")
+            .help("Time between receiving a command and the first reply to it being delivered")
+            .labelNames("class") // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
+            .buckets(.05, .1, .25, .5, 1, 2.5, 5, 10, 30)
+            .register();
+
     public static final Counter commandsExecuted = Counter.build()
             .name("fredboat_commands_executed_total")
             .help("Total executed commands by class")
@@ -224,16 +285,66 @@ public class Metrics {
             .labelNames("path") // like /stats, /metrics, etc
             .register();
 
+    public static final Summary metricsCollectionDuration = Summary.build()
+            .name("fredboat_metrics_collection_duration_seconds")
+            .help("Time spent collecting metrics for the metrics endpoint")
+            .labelNames("collector") // name of the collector, or registry for a complete collection pass
+            .register();
+
 
     // ################################################################################
     // ##                           Various
     // ################################################################################
 
+    public static final Histogram executorProbeLag = Histogram.build()
+            .name("fredboat_executor_probe_lag_seconds")
+            .help("How long probe tasks waited before a thread pool or coroutine dispatcher started them")
+            .labelNames("name") // name of the pool or dispatcher, like command-worker or coroutines-default
+            .buckets(.0001, .001, .005, .01, .05, .1, .5, 1, 5, 10, 30)
+            .register();
+
+    public static final Histogram agentRunDuration = Histogram.build()
+            .name("fredboat_agent_run_duration_seconds")
+            .help("How long runs of agents took")
+            .labelNames("agent") // name of the agent, like voice-cleanup
+            .buckets(.001, .01, .1, .5, 1, 5, 10, 30, 60, 300)
+            .register();
+
+    public static final Counter agentRunsSkipped = Counter.build()
+            .name("fredboat_agent_runs_skipped_total")
+            .help("Total agent runs that were skipped because the previous run of the agent was still going")
+            .labelNames("agent")
+            .register();
+
+    public static final Counter agentRunFailures = Counter.build()
+            .name("fredboat_agent_run_failures_total")
+            .help("Total agent runs that ended with an unhandled throwable")
+            .labelNames("agent")
+            .register();
+
+    public static final Counter agentCpuBudgetsExceeded = Counter.build()
+            .name("fredboat_agent_cpu_budgets_exceeded_total")
+            .help("Total agent runs that used more cpu time than their agent is budgeted")
+            .labelNames("agent")
+            .register();
+
     public static final Counter databaseExceptionsCreated = Counter.build()
             .name("fredboat_db_exceptions_created_total")
             .help("Total database exceptions created")
             .register();
 
+    public static final Counter writeBehindMerges = Counter.build()
+            .name("fredboat_db_write_behind_merges_total")
+            .help("Total deferred entity merges by outcome")
+            .labelNames("cache", "outcome") //queued, coalesced, flushed, failed, rejected
+            .register();
+
+    public static final Counter guildCacheEvictions = Counter.build()
+            .name("fredboat_guild_cache_evictions_total")
+            .help("Total guilds dropped from the guild cache")
+            .labelNames("reason") //idle, budget
+            .register();
+
     public static final Histogram guildLifespan = Histogram.build()
             .name("fredboat_guild_lifespan_seconds")
             .help("How long were we part of a guild when leaving it")
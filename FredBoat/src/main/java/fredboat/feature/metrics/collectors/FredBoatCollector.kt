@@ -76,6 +76,10 @@ class FredBoatCollector(
                 "Number of subscribed guilds", listOf("total"))
         mfs.add(guildCacheSize)
 
+        val guildCacheEntities = GaugeMetricFamily("fredboat_guild_cache_entities",
+                "Number of members, channels and roles of all subscribed guilds", listOf())
+        mfs.add(guildCacheEntities)
+
         //global jda entity stats
         if (botMetrics.entityCounts != null && botMetrics.entityCounts?.hashCode() != lastEntityCountHash) {
             val countsPair = botMetrics.entityCounts!!
@@ -111,6 +115,7 @@ class FredBoatCollector(
         }
 
         guildCacheSize.addMetric(listOf("total"), guildCache.cache.size.toDouble())
+        guildCacheEntities.addMetric(listOf(), guildCache.entityCount.toDouble())
 
         return mfs
     }
@@ -25,26 +25,58 @@
 
 package fredboat.feature.metrics.collectors;
 
+import fredboat.feature.metrics.Metrics;
 import io.prometheus.client.Collector;
 import io.prometheus.client.CounterMetricFamily;
 import io.prometheus.client.GaugeMetricFamily;
+import kotlin.coroutines.EmptyCoroutineContext;
+import kotlinx.coroutines.CoroutineDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by napster on 19.10.17.
+ * <p>
+ * Besides the stats of the registered pools, this measures how long it takes them and the registered coroutine
+ * dispatchers to start a task, by submitting a probe task to each of them every few seconds. A probe that does not
+ * get to run for a long time means that the pool is starved of threads, rather than waiting on some backend.
  */
 @Component
 public class ThreadPoolCollector extends Collector {
 
+    private static final Logger log = LoggerFactory.getLogger(ThreadPoolCollector.class);
+    private static final long PROBE_INTERVAL_MILLIS = 5000;
+
     protected final ConcurrentMap<String, ThreadPoolExecutor> pools = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, CoroutineDispatcher> dispatchers = new ConcurrentHashMap<>();
+    /** Name of the pool or dispatcher -> nano time at which its outstanding probe was submitted */
+    private final ConcurrentMap<String, Long> pendingProbes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService prober = Executors.newScheduledThreadPool(1, r -> {
+        Thread thread = new Thread(r, "executor-lag-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ThreadPoolCollector() {
+        prober.scheduleAtFixedRate(this::probe, PROBE_INTERVAL_MILLIS, PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
 
     /**
      * Add or replace the pool with the given name.
@@ -66,9 +98,38 @@ public class ThreadPoolCollector extends Collector {
      * @param poolName pool to be removed
      */
     public ThreadPoolExecutor removePool(String poolName) {
+        pendingProbes.remove(poolName);
         return pools.remove(poolName);
     }
 
+    /**
+     * Add or replace the coroutine dispatcher with the given name. Dispatchers backed by a registered pool don't need
+     * to be added, their pool is probed already.
+     *
+     * @param dispatcherName The name of the dispatcher, will be the metrics label value
+     * @param dispatcher     The dispatcher being probed
+     */
+    public void addDispatcher(String dispatcherName, CoroutineDispatcher dispatcher) {
+        dispatchers.put(dispatcherName, dispatcher);
+    }
+
+    /**
+     * @return the pool that loads the items of a lavaplayer DefaultAudioPlayerManager, or null if it can't be
+     * reached. Lavaplayer does not expose it, so it is looked up reflectively.
+     */
+    @Nullable
+    public static ThreadPoolExecutor getLavaplayerItemLoaderPool(Object audioPlayerManager) {
+        try {
+            Field field = audioPlayerManager.getClass().getDeclaredField("trackInfoExecutorService");
+            field.setAccessible(true);
+            Object pool = field.get(audioPlayerManager);
+            return pool instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) pool : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Could not access the item loader pool of {}", audioPlayerManager.getClass().getSimpleName(), e);
+            return null;
+        }
+    }
+
     /**
      * Remove all pools.
      * <p>
@@ -76,6 +137,38 @@ public class ThreadPoolCollector extends Collector {
      */
     public void clear() {
         pools.clear();
+        dispatchers.clear();
+        pendingProbes.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+
+    private void probe() {
+        try {
+            pools.forEach((name, pool) -> submitProbe(name, pool));
+            dispatchers.forEach((name, dispatcher) ->
+                    submitProbe(name, task -> dispatcher.dispatch(EmptyCoroutineContext.INSTANCE, task)));
+        } catch (Exception e) {
+            log.error("Failed to probe executors", e);
+        }
+    }
+
+    private void submitProbe(String name, Executor executor) {
+        long submitted = System.nanoTime();
+        // The previous probe has not run yet, so it already tells how far behind the executor is
+        if (pendingProbes.putIfAbsent(name, submitted) != null) return;
+
+        try {
+            executor.execute(() -> {
+                pendingProbes.remove(name);
+                Metrics.executorProbeLag.labels(name).observe((System.nanoTime() - submitted) / 1_000_000_000.0);
+            });
+        } catch (RejectedExecutionException e) {
+            pendingProbes.remove(name); // shut down
+        }
     }
 
 
@@ -97,6 +190,19 @@ public class ThreadPoolCollector extends Collector {
                 "Total completed tasks by a thread pool", labelNames);
         mfs.add(completedTasks);
 
+        GaugeMetricFamily threads = new GaugeMetricFamily("fredboat_threadpool_threads_current",
+                "Amount of threads in a thread pool, busy or not", labelNames);
+        mfs.add(threads);
+
+        GaugeMetricFamily maxThreads = new GaugeMetricFamily("fredboat_threadpool_max_threads",
+                "Maximum amount of threads of a thread pool", labelNames);
+        mfs.add(maxThreads);
+
+        GaugeMetricFamily pendingProbe = new GaugeMetricFamily("fredboat_executor_probe_pending_seconds",
+                "How long the outstanding lag probe of a thread pool or coroutine dispatcher has been waiting to run, 0 if none",
+                labelNames);
+        mfs.add(pendingProbe);
+
         for (Map.Entry<String, ThreadPoolExecutor> entry : pools.entrySet()) {
             String poolName = entry.getKey();
             ThreadPoolExecutor pool = entry.getValue();
@@ -105,6 +211,17 @@ public class ThreadPoolCollector extends Collector {
             activeThreads.addMetric(labels, pool.getActiveCount());
             queueSize.addMetric(labels, pool.getQueue().size());
             completedTasks.addMetric(labels, pool.getCompletedTaskCount()); //guaranteed to always increase, ergo good fit for a counter
+            threads.addMetric(labels, pool.getPoolSize());
+            maxThreads.addMetric(labels, pool.getMaximumPoolSize());
+        }
+
+        long now = System.nanoTime();
+        List<String> probed = new ArrayList<>(pools.keySet());
+        probed.addAll(dispatchers.keySet());
+        for (String name : probed) {
+            Long submitted = pendingProbes.get(name);
+            pendingProbe.addMetric(Collections.singletonList(name),
+                    submitted == null ? 0 : (now - submitted) / 1_000_000_000.0);
         }
 
         return mfs;
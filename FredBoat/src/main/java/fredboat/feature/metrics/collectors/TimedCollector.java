@@ -0,0 +1,59 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.feature.metrics.collectors;
+
+import fredboat.feature.metrics.Metrics;
+import io.prometheus.client.Collector;
+
+import java.util.List;
+
+/**
+ * Wraps a collector to measure how long it takes to collect its samples. Register the wrapper instead of the
+ * wrapped collector.
+ */
+public class TimedCollector extends Collector {
+
+    private final String name;
+    private final Collector delegate;
+
+    /**
+     * @param name the metrics label value, like the name of the wrapped collector
+     */
+    public TimedCollector(String name, Collector delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        long start = System.nanoTime();
+        try {
+            return delegate.collect();
+        } finally {
+            Metrics.metricsCollectionDuration.labels(name).observe((System.nanoTime() - start) / 1_000_000_000.0);
+        }
+    }
+}
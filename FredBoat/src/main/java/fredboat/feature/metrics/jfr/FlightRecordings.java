@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.feature.metrics.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Manages the one on-demand flight recording we allow at a time. Recordings are bounded in duration and size, so one
+ * that is forgotten about can't fill the disk.
+ */
+public class FlightRecordings {
+
+    private static final Logger log = LoggerFactory.getLogger(FlightRecordings.class);
+
+    public static final Duration DEFAULT_DURATION = Duration.ofMinutes(10);
+    public static final Duration MAX_DURATION = Duration.ofHours(1);
+    public static final long MAX_SIZE_BYTES = 256L * 1024 * 1024;
+    private static final Path DUMP_DIRECTORY = Paths.get("jfr");
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+
+    @Nullable
+    private static Recording recording;
+
+    private FlightRecordings() {
+    }
+
+    /**
+     * Starts a recording with the profiling settings of the JDK and our own events, discarding the data of any
+     * previous recording.
+     *
+     * @param duration how long to record for, capped at {@link #MAX_DURATION}
+     * @return the duration of the recording
+     * @throws IllegalStateException if a recording is already running
+     */
+    public static synchronized Duration start(Duration duration) throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("A recording is already running");
+        }
+        if (recording != null) {
+            recording.close();
+        }
+
+        Duration capped = duration.compareTo(MAX_DURATION) > 0 ? MAX_DURATION : duration;
+        Recording started = new Recording(Configuration.getConfiguration("profile"));
+        started.setName("fredboat");
+        started.setDuration(capped);
+        started.setMaxSize(MAX_SIZE_BYTES);
+        started.setToDisk(true);
+        started.enable(CommandExecutionEvent.class);
+        started.enable(SentinelRequestEvent.class);
+        started.enable(TrackLoadEvent.class);
+        started.enable(TrackPlaybackEvent.class);
+        started.enable(BackendCallEvent.class);
+        started.start();
+        recording = started;
+
+        log.info("Started a flight recording for {}", capped);
+        return capped;
+    }
+
+    /**
+     * Writes what has been recorded so far to a file. Works for running recordings as well as finished ones.
+     *
+     * @return the path of the written file
+     * @throws IllegalStateException if no recording has been started
+     */
+    public static synchronized Path dump() throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("No recording has been started");
+        }
+
+        Files.createDirectories(DUMP_DIRECTORY);
+        Path file = DUMP_DIRECTORY.resolve("fredboat_" + LocalDateTime.now().format(FILE_NAME_FORMAT) + ".jfr")
+                .toAbsolutePath();
+        recording.dump(file);
+
+        log.info("Dumped the flight recording to {}", file);
+        return file;
+    }
+
+    /**
+     * Stops the running recording. Its data is kept until the next recording is started, so it can still be dumped.
+     *
+     * @return false if no recording was running
+     */
+    public static synchronized boolean stop() {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            return false;
+        }
+        recording.stop();
+        return true;
+    }
+
+    /**
+     * @return a human readable description of the current recording
+     */
+    public static synchronized String status() {
+        if (recording == null) {
+            return "No recording has been started.";
+        }
+        return String.format("Recording is %s, started at %s, duration %s, recorded %d kB so far.",
+                recording.getState().name().toLowerCase(), recording.getStartTime(), recording.getDuration(),
+                recording.getSize() / 1024);
+    }
+}
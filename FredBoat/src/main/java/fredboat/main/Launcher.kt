@@ -44,7 +44,8 @@ class Launcher(
         private val statsAgent: StatsAgent,
         private val invalidationAgent: GuildCacheInvalidationAgent,
         private val voiceChannelCleanupAgent: VoiceChannelCleanupAgent,
-        private val carbonitexAgent: CarbonitexAgent
+        private val carbonitexAgent: CarbonitexAgent,
+        private val writeBehindAgent: WriteBehindAgent
 ) : ApplicationRunner, ApplicationContextAware {
 
     init {
@@ -70,6 +71,7 @@ class Launcher(
 
         FredBoatAgent.start(statsAgent)
         FredBoatAgent.start(invalidationAgent)
+        FredBoatAgent.start(writeBehindAgent)
 
         val carbonKey = configProvider.credentials.carbonKey
         if (configProvider.appConfig.isMusicDistribution && !carbonKey.isEmpty()) FredBoatAgent.start(carbonitexAgent)
@@ -78,7 +80,7 @@ class Launcher(
         while (areThereNotConnectedShards()) {
             Thread.sleep(1000)
         }
-        statsAgent.run()
+        statsAgent.runNow()
     }
 
     // ################################################################################
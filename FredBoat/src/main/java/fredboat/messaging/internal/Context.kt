@@ -32,6 +32,7 @@ import com.fredboat.sentinel.entities.passed
 import fredboat.command.config.PrefixCommand
 import fredboat.commandmeta.MessagingException
 import fredboat.feature.I18n
+import fredboat.feature.metrics.CommandTrace
 import fredboat.perms.IPermissionSet
 import fredboat.perms.PermissionSet
 import fredboat.perms.PermsUtil
@@ -42,7 +43,6 @@ import kotlinx.coroutines.reactive.awaitSingle
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import reactor.core.publisher.Mono
-import java.text.MessageFormat
 import java.util.*
 import javax.annotation.CheckReturnValue
 
@@ -67,27 +67,31 @@ abstract class Context {
     val sentinel: Sentinel get() = guild.sentinel
     val routingKey: String get() = guild.routingKey
 
+    /** Latency trace of the message that triggered this context, if any */
+    open val trace: CommandTrace? get() = null
+
     // ********************************************************************************
     //                         Internal context stuff
     // ********************************************************************************
 
-    private var i18n: ResourceBundle? = null
+    // resolved once per context, as resolving it means fetching the guild config
+    private var cachedLocale: I18n.FredBoatLocale? = null
 
     // ********************************************************************************
     //                         Convenience reply methods
     // ********************************************************************************
 
 
-    fun replyMono(message: String): Mono<SendMessageResponse> = textChannel.send(message)
+    fun replyMono(message: String): Mono<SendMessageResponse> = traced(textChannel.send(message))
 
     fun reply(message: String) {
-        textChannel.send(message).subscribe()
+        replyMono(message).subscribe()
     }
 
-    fun replyMono(message: Embed): Mono<SendMessageResponse> = textChannel.send(message)
+    fun replyMono(message: Embed): Mono<SendMessageResponse> = traced(textChannel.send(message))
 
     fun reply(message: Embed) {
-        textChannel.send(message).subscribe()
+        replyMono(message).subscribe()
     }
 
     fun replyWithNameMono(message: String): Mono<SendMessageResponse> {
@@ -109,13 +113,18 @@ abstract class Context {
     fun replyImageMono(url: String, message: String = ""): Mono<SendMessageResponse> {
         val embed = embedImage(url)
         embed.description = message
-        return textChannel.send(embed)
+        return traced(textChannel.send(embed))
     }
 
     fun replyImage(url: String, message: String = "") {
         replyImageMono(url, message).subscribe()
     }
 
+    private fun traced(mono: Mono<SendMessageResponse>): Mono<SendMessageResponse> {
+        val trace = trace ?: return mono
+        return mono.doOnSuccess { trace.onReplyDelivered() }
+    }
+
     fun sendTyping() {
         textChannel.sendTyping()
     }
@@ -198,10 +207,11 @@ abstract class Context {
      */
     @CheckReturnValue
     fun i18n(key: String): String {
-        return if (getI18n().containsKey(key)) {
-            getI18n().getString(key)
+        val locale = getLocale()
+        return if (locale.props.containsKey(key)) {
+            locale.props.getString(key)
         } else {
-            log.warn("Missing language entry for key {} in language {}", key, I18n.getLocale(guild).code)
+            log.warn("Missing language entry for key {} in language {}", key, locale.code)
             I18n.DEFAULT.props.getString(key)
         }
     }
@@ -219,22 +229,27 @@ abstract class Context {
             log.warn("Context#i18nFormat() called with empty or null params, this is likely a bug.",
                     MessagingException("a stack trace to help find the source"))
         }
-        return try {
-            MessageFormat.format(this.i18n(key), *params)
-        } catch (e: IllegalArgumentException) {
+        val locale = getLocale()
+        val template = locale.getTemplate(key)
+        if (template != null) return template.format(*params)
+
+        if (locale.props.containsKey(key)) {
             log.warn("Failed to format key '{}' for language '{}' with following parameters: {}",
-                    key, getI18n().baseBundleName, params, e)
-            //fall back to default props
-            MessageFormat.format(I18n.DEFAULT.props.getString(key), *params)
+                    key, locale.code, params)
+        } else {
+            log.warn("Missing language entry for key {} in language {}", key, locale.code)
         }
-
+        //fall back to default props
+        return I18n.DEFAULT.format(key, *params)
     }
 
-    fun getI18n(): ResourceBundle {
-        var result = i18n
+    fun getI18n(): ResourceBundle = getLocale().props
+
+    fun getLocale(): I18n.FredBoatLocale {
+        var result = cachedLocale
         if (result == null) {
-            result = I18n.get(guild)
-            i18n = result
+            result = I18n.getLocale(guild)
+            cachedLocale = result
         }
         return result
     }
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.perms
+
+import fredboat.definitions.PermissionLevel
+import fredboat.feature.metrics.Metrics
+import fredboat.sentinel.Member
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Memoizes the effective [PermissionLevel] of members per guild. Entries are dropped whenever something that goes into
+ * the level may have changed: member, role and guild updates from Sentinel, and changes to the guild permissions.
+ * Guilds are dropped as a whole when they leave the guild cache.
+ */
+object PermissionLevelCache {
+
+    // In case we ever miss an update
+    private const val MAX_AGE_MILLIS: Long = 10 * 60 * 1000 // 10 minutes
+
+    private val guilds = ConcurrentHashMap<Long, GuildLevels>()
+
+    private class GuildLevels {
+        /** Bumped on every invalidation, so that levels computed concurrently to it are not stored */
+        val generation = AtomicLong()
+        val levels = ConcurrentHashMap<Long, CachedLevel>()
+    }
+
+    private class CachedLevel(val level: PermissionLevel, val computedAt: Long)
+
+    suspend fun get(member: Member, compute: suspend (Member) -> PermissionLevel): PermissionLevel {
+        val guildLevels = guilds.computeIfAbsent(member.guild.id) { GuildLevels() }
+        val now = System.currentTimeMillis()
+        val cached = guildLevels.levels[member.id]
+        if (cached != null && cached.computedAt + MAX_AGE_MILLIS > now) {
+            Metrics.permissionLevelLookups.labels("hit").inc()
+            return cached.level
+        }
+        Metrics.permissionLevelLookups.labels("miss").inc()
+
+        val generation = guildLevels.generation.get()
+        val level = compute(member)
+        if (guildLevels.generation.get() == generation) {
+            guildLevels.levels[member.id] = CachedLevel(level, now)
+            // An invalidation may have slipped in between the check and the put
+            if (guildLevels.generation.get() != generation) guildLevels.levels.remove(member.id)
+        }
+        return level
+    }
+
+    fun invalidateMember(guildId: Long, memberId: Long) {
+        val guildLevels = guilds[guildId] ?: return
+        guildLevels.generation.incrementAndGet()
+        guildLevels.levels.remove(memberId)
+    }
+
+    fun invalidateGuild(guildId: Long) {
+        guilds.remove(guildId)?.generation?.incrementAndGet()
+    }
+}
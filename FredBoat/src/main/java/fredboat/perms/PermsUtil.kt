@@ -37,7 +37,12 @@ import javax.annotation.CheckReturnValue
  */
 object PermsUtil {
 
-    suspend fun getPerms(member: Member): PermissionLevel = when {
+    /**
+     * Memoized per member, see [PermissionLevelCache] for when it gets invalidated.
+     */
+    suspend fun getPerms(member: Member): PermissionLevel = PermissionLevelCache.get(member, ::computePerms)
+
+    private suspend fun computePerms(member: Member): PermissionLevel = when {
         isBotOwner(member)
         -> PermissionLevel.BOT_OWNER
         isBotAdmin(member)
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.sentinel
+
+import fredboat.util.TimerWheel
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Eviction bookkeeping of the [GuildCache]: when each cached guild is due to be checked for idleness, and the order
+ * in which the guilds were last used, together with how many entities each of them holds. Thread safe, all of it is
+ * guarded by one lock, so picking and removing eviction victims can't race with each other.
+ */
+class GuildEvictionIndex(startMillis: Long = System.currentTimeMillis()) {
+
+    private val lock = Any()
+    private val idleDeadlines = TimerWheel(TimeUnit.SECONDS.toMillis(10), 512, startMillis)
+    /** Guild id -> entity count, least recently used first */
+    private val accessOrder = LinkedHashMap<Long, Int>(1024, 0.75f, true)
+    private var _entityCount = 0L
+
+    val size: Int
+        get() = synchronized(lock) { accessOrder.size }
+
+    /** Members, channels and roles of all tracked guilds together */
+    val entityCount: Long
+        get() = synchronized(lock) { _entityCount }
+
+    operator fun contains(id: Long) = synchronized(lock) { accessOrder.containsKey(id) }
+
+    /**
+     * @param maxGuilds   0 for no limit
+     * @param maxEntities 0 for no limit
+     */
+    fun isOverBudget(maxGuilds: Int, maxEntities: Long) = synchronized(lock) {
+        exceeds(accessOrder.size, _entityCount, maxGuilds, maxEntities)
+    }
+
+    /**
+     * Starts tracking the guild as the most recently used one, or updates it if it is tracked already.
+     */
+    fun track(id: Long, entityCount: Int, idleDeadlineMillis: Long) {
+        synchronized(lock) {
+            val previous = accessOrder.put(id, entityCount)
+            _entityCount += entityCount - (previous ?: 0)
+            idleDeadlines.schedule(id, idleDeadlineMillis)
+        }
+    }
+
+    /**
+     * Like [track], but ignores guilds that are not tracked (anymore).
+     *
+     * @return false if the guild is not tracked
+     */
+    fun touch(id: Long, entityCount: Int, idleDeadlineMillis: Long): Boolean {
+        synchronized(lock) {
+            val previous = accessOrder[id] ?: return false
+            accessOrder[id] = entityCount
+            _entityCount += entityCount - previous
+            idleDeadlines.schedule(id, idleDeadlineMillis)
+            return true
+        }
+    }
+
+    /**
+     * @return false if the guild was not tracked
+     */
+    fun remove(id: Long): Boolean {
+        synchronized(lock) {
+            idleDeadlines.cancel(id)
+            val weight = accessOrder.remove(id) ?: return false
+            _entityCount -= weight
+            return true
+        }
+    }
+
+    /**
+     * @return the tracked guilds whose idle deadline has passed. They stay tracked, but need to be scheduled with
+     *         [scheduleIdleCheck] again to be returned by a later poll.
+     */
+    fun pollIdle(nowMillis: Long): LongArrayList = synchronized(lock) { idleDeadlines.advance(nowMillis) }
+
+    fun scheduleIdleCheck(id: Long, deadlineMillis: Long) {
+        synchronized(lock) {
+            if (accessOrder.containsKey(id)) idleDeadlines.schedule(id, deadlineMillis)
+        }
+    }
+
+    /**
+     * Removes guilds, least recently used first, until the rest fits the budget. They are removed right away, so
+     * concurrent callers never get the same guild.
+     *
+     * @param evictable whether the guild may be evicted, this is called while holding the lock
+     * @return the removed guilds, which the caller needs to invalidate
+     */
+    fun removeOverBudget(maxGuilds: Int, maxEntities: Long, evictable: (Long) -> Boolean): LongArrayList {
+        val removed = LongArrayList()
+        synchronized(lock) {
+            val iterator = accessOrder.entries.iterator()
+            while (exceeds(accessOrder.size, _entityCount, maxGuilds, maxEntities)) {
+                if (!iterator.hasNext()) break // everything else is in use
+                val (id, weight) = iterator.next()
+                if (!evictable(id)) continue
+                iterator.remove()
+                _entityCount -= weight
+                idleDeadlines.cancel(id)
+                removed.add(id)
+            }
+        }
+        return removed
+    }
+
+    private fun exceeds(guilds: Int, entities: Long, maxGuilds: Int, maxEntities: Long) =
+            (maxGuilds > 0 && guilds > maxGuilds) || (maxEntities > 0 && entities > maxEntities)
+}
@@ -1,8 +1,10 @@
 package fredboat.sentinel
 
 import com.fredboat.sentinel.entities.*
+import fredboat.audio.player.VoiceIdleTracker
 import fredboat.config.SentryConfiguration
 import fredboat.event.*
+import fredboat.perms.PermissionLevelCache
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import org.slf4j.MDC
@@ -24,7 +26,8 @@ class RabbitConsumer(
         audioHandler: AudioEventHandler,
         messageHandler: MessageEventHandler,
         musicPersistenceHandler: MusicPersistenceHandler,
-        shardReviveHandler: ShardLifecycleHandler
+        shardReviveHandler: ShardLifecycleHandler,
+        voiceIdleTracker: VoiceIdleTracker
 ) {
 
     companion object {
@@ -37,7 +40,8 @@ class RabbitConsumer(
             audioHandler,
             messageHandler,
             musicPersistenceHandler,
-            shardReviveHandler
+            shardReviveHandler,
+            voiceIdleTracker
     )
 
     @RabbitHandler(isDefault = true)
@@ -78,8 +82,9 @@ class RabbitConsumer(
         log.info("Left guild ${event.guild}")
         guildCache.getIfCached(event.guild)?.let {
             (it as InternalGuild).onSelfLeaving()
-            guildCache.cache.remove(event.guild)
+            guildCache.remove(event.guild)
         }
+        PermissionLevelCache.invalidateGuild(event.guild)
         val instant = Instant.ofEpochMilli(event.joinTime)
         eventHandlers.forEach { it.onGuildLeave(event.guild, instant) }
     }
@@ -176,20 +181,21 @@ class RabbitConsumer(
 
     @RabbitHandler
     fun guildUpdate(event: GuildUpdateEvent) {
-        val cached = guildCache.getIfCached(event.guild.id) ?: return
-        (cached as InternalGuild).update(event.guild)
+        (guildCache.getIfCached(event.guild.id) as? InternalGuild)?.update(event.guild)
+        // The owner may have changed. Invalidate only after updating, or a concurrent lookup could cache the old state
+        PermissionLevelCache.invalidateGuild(event.guild.id)
     }
 
     @RabbitHandler
     fun updateMember(event: GuildMemberUpdate) {
-        val member = guildCache.getIfCached(event.guild)?.getMember(event.member.id) ?: return
-        (member as InternalMember).update(event.member)
+        (guildCache.getIfCached(event.guild) as? InternalGuild)?.handleMemberUpdate(event.member)
+        PermissionLevelCache.invalidateMember(event.guild, event.member.id)
     }
 
     @RabbitHandler
     fun updateRole(event: RoleUpdate) {
-        val channel = guildCache.getIfCached(event.guild)?.getRole(event.role.id) ?: return
-        (channel as InternalRole).update(event.role)
+        (guildCache.getIfCached(event.guild)?.getRole(event.role.id) as? InternalRole)?.update(event.role)
+        PermissionLevelCache.invalidateGuild(event.guild) // Affects every member holding the role
     }
 
     @RabbitHandler
@@ -211,9 +217,11 @@ class RabbitConsumer(
 
     @RabbitHandler
     fun handleMemberRemove(event: GuildMemberLeaveEvent) {
-        val guild = (guildCache.getIfCached(event.guild) as? InternalGuild) ?: return
-        guild.handleMemberRemove(event.member)
-        guild.removeMemberFromAllVoiceChannels(event.member)
+        (guildCache.getIfCached(event.guild) as? InternalGuild)?.let {
+            it.handleMemberRemove(event.member)
+            it.removeMemberFromAllVoiceChannels(event.member)
+        }
+        PermissionLevelCache.invalidateMember(event.guild, event.member)
     }
 
     @RabbitHandler
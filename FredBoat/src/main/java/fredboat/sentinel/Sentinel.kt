@@ -3,6 +3,7 @@ package fredboat.sentinel
 import com.fredboat.sentinel.SentinelExchanges
 import com.fredboat.sentinel.entities.*
 import fredboat.config.ApplicationInfo
+import fredboat.feature.metrics.jfr.SentinelRequestEvent
 import fredboat.perms.IPermissionSet
 import org.springframework.amqp.core.MessageDeliveryMode
 import org.springframework.amqp.core.MessagePostProcessor
@@ -53,8 +54,14 @@ class Sentinel(private val template: AsyncRabbitTemplate,
         val postProcessor = MessagePostProcessor { processor ->
             processor.messageProperties.deliveryMode = deliveryMode; processor
         }
+        val event = SentinelRequestEvent()
+        event.requestType = request.javaClass.simpleName
+        event.routingKey = routingKey
+        event.begin()
         template.convertSendAndReceive<R?>(exchange, routingKey, request, postProcessor).addCallback(
                 { res ->
+                    event.succeeded = true
+                    event.commit()
                     try {
                         if (res == null) {
                             if (mayBeEmpty) it.success()
@@ -65,6 +72,7 @@ class Sentinel(private val template: AsyncRabbitTemplate,
                     }
                 },
                 { t ->
+                    event.commit()
                     it.error(t.asCause(request))
                 }
         )
@@ -5,8 +5,8 @@ import com.fredboat.sentinel.entities.FredBoatHello
 import com.fredboat.sentinel.entities.SentinelHello
 import fredboat.agent.FredBoatAgent
 import fredboat.agent.HelloSender
+import fredboat.commandmeta.CommandScheduler
 import fredboat.config.property.AppConfig
-import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import org.slf4j.Logger
@@ -24,7 +24,8 @@ import java.util.concurrent.ConcurrentHashMap
 class SentinelTracker(
         private val appConfig: AppConfig,
         private val rabbit: RabbitTemplate,
-        helloSender: HelloSender
+        helloSender: HelloSender,
+        commandScheduler: CommandScheduler
 ) {
     companion object {
         private val log: Logger = LoggerFactory.getLogger(SentinelTracker::class.java)
@@ -34,7 +35,8 @@ class SentinelTracker(
         val time = SimpleDateFormat("dd-MM-yyyy-HH:mm:ss").format(Date.from(Instant.now()))
         val id = "FredBoat@$time"
 
-        val task = GlobalScope.launch {
+        // Sending blocks while the broker is unreachable
+        val task = commandScheduler.blockingScope.launch {
             log.info("Sending FredBoat hello")
             hello(id)
             delay(5000)
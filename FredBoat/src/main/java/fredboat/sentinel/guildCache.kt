@@ -3,9 +3,10 @@ package fredboat.sentinel
 import com.fredboat.sentinel.SentinelExchanges
 import com.fredboat.sentinel.entities.GuildSubscribeRequest
 import com.google.common.cache.CacheBuilder
+import fredboat.agent.GuildCacheInvalidationAgent
 import fredboat.audio.lavalink.SentinelLavalink
+import fredboat.commandmeta.CommandScheduler
 import fredboat.config.property.AppConfig
-import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.reactive.awaitFirstOrNull
 import org.slf4j.Logger
@@ -17,11 +18,13 @@ import java.time.Duration
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
 
 @Service
 class GuildCache(private val sentinel: Sentinel,
                  private val appConfig: AppConfig,
-                 private val lavalink: SentinelLavalink) {
+                 private val lavalink: SentinelLavalink,
+                 private val commandScheduler: CommandScheduler) {
 
     init {
         @Suppress("LeakingThis")
@@ -31,12 +34,26 @@ class GuildCache(private val sentinel: Sentinel,
     companion object {
         lateinit var INSTANCE: GuildCache
         private val log: Logger = LoggerFactory.getLogger(GuildCache::class.java)
+        /** How long a guild is kept after it was last used, unless we are connected to voice in it */
+        val IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10)
     }
 
     @Autowired
     /* Cyclic dependency */
     lateinit var rabbitConsumer: RabbitConsumer
-    val cache = ConcurrentHashMap<Long, InternalGuild>()
+
+    private val _cache = ConcurrentHashMap<Long, InternalGuild>()
+    val cache: Map<Long, InternalGuild> get() = _cache
+
+    private val evictionIndex = GuildEvictionIndex()
+    private val budgetEnforcementPending = AtomicBoolean(false)
+
+    /** Members, channels and roles of all cached guilds together */
+    val entityCount: Long
+        get() = evictionIndex.entityCount
+
+    val isOverBudget: Boolean
+        get() = evictionIndex.isOverBudget(appConfig.guildCacheMaxGuilds, appConfig.guildCacheMaxEntities)
 
     /** Non-finished requests. Acts as a debounce */
     private val requestCache = CacheBuilder.newBuilder()
@@ -84,7 +101,8 @@ class GuildCache(private val sentinel: Sentinel,
 
         val timeTakenReceive = System.currentTimeMillis() - startTime
         val g = InternalGuild(it)
-        cache[g.id] = g
+        _cache[g.id] = g
+        track(g)
         val timeTakenParse = System.currentTimeMillis() - startTime - timeTakenReceive
         val timeTaken = timeTakenReceive + timeTakenParse
 
@@ -99,7 +117,7 @@ class GuildCache(private val sentinel: Sentinel,
 
         // Asynchronously handle existing VSU from an older FredBoat session, if it exists
         it.voiceServerUpdate?.let { vsu ->
-            GlobalScope.launch {
+            commandScheduler.blockingScope.launch {
                 val channelId = g.selfMember.voiceChannel?.idString
 
                 val link = lavalink.getLink(g)
@@ -124,7 +142,64 @@ class GuildCache(private val sentinel: Sentinel,
         return g
     }
 
-    fun getIfCached(id: Long): Guild? = cache[id]
+    fun getIfCached(id: Long): Guild? = _cache[id]
+
+    /**
+     * Marks the guild as used, which postpones its invalidation and moves it to the back of the eviction order.
+     */
+    fun touch(guild: InternalGuild) {
+        guild.lastUsed = System.currentTimeMillis()
+        // Ignored if the guild was already removed from the cache
+        evictionIndex.touch(guild.id, guild.entityCount, guild.lastUsed + IDLE_TIMEOUT_MILLIS)
+    }
+
+    /**
+     * Drops the guild from the cache. Does not unsubscribe from it.
+     */
+    fun remove(id: Long): InternalGuild? {
+        val guild = _cache.remove(id)
+        evictionIndex.remove(id)
+        return guild
+    }
+
+    /**
+     * @return the cached guilds whose idle deadline has passed. They need to be checked with [scheduleIdleCheck]
+     *         again if they are kept.
+     */
+    fun pollIdle(): List<InternalGuild> =
+            evictionIndex.pollIdle(System.currentTimeMillis()).mapNotNull { _cache[it] }
+
+    fun scheduleIdleCheck(guild: InternalGuild, deadlineMillis: Long) =
+            evictionIndex.scheduleIdleCheck(guild.id, deadlineMillis)
+
+    /**
+     * Takes guilds out of the eviction bookkeeping until the cache fits its budget again, least recently used first.
+     * Concurrent callers never get the same guild, and each caller is responsible for invalidating what it gets.
+     *
+     * @param evictable whether the guild may be evicted, this is called while holding a lock
+     */
+    fun takeOverBudget(evictable: (InternalGuild) -> Boolean): List<InternalGuild> {
+        val taken = evictionIndex.removeOverBudget(appConfig.guildCacheMaxGuilds, appConfig.guildCacheMaxEntities) {
+            // Guilds that already left the cache only need their bookkeeping dropped
+            _cache[it]?.let(evictable) ?: true
+        }
+        return taken.mapNotNull { _cache[it] }
+    }
+
+    private fun track(guild: InternalGuild) {
+        evictionIndex.track(guild.id, guild.entityCount, guild.lastUsed + IDLE_TIMEOUT_MILLIS)
+
+        // Don't wait for the next agent run, a burst of subscriptions could fill the heap by then
+        if (isOverBudget && budgetEnforcementPending.compareAndSet(false, true)) {
+            commandScheduler.blockingScope.launch {
+                try {
+                    GuildCacheInvalidationAgent.INSTANCE.evictOverBudget()
+                } finally {
+                    budgetEnforcementPending.set(false)
+                }
+            }
+        }
+    }
 
     private fun calculateShardId(guildId: Long): Int = ((guildId shr 22) % appConfig.shardCount.toLong()).toInt()
 
@@ -11,6 +11,7 @@ import fredboat.perms.IPermissionSet
 import fredboat.perms.NO_PERMISSIONS
 import fredboat.perms.Permission
 import fredboat.perms.PermissionSet
+import fredboat.util.TrigramIndex
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import org.springframework.amqp.AmqpRejectAndDontRequeueException
@@ -110,6 +111,12 @@ abstract class Guild(raw: RawGuild) : SentinelEntity {
 /** Has public members we want to hide */
 class InternalGuild(raw: RawGuild) : Guild(raw) {
 
+    // Declared before the init block, as update() uses them
+    /** Built on the first member search, and kept up to date by member events after that */
+    @Volatile
+    private var memberIndex: TrigramIndex? = null
+    private val memberIndexLock = Any()
+
     init {
         update(raw)
         // Any old GuildPlayer needs to be aware of the new guild object
@@ -120,10 +127,14 @@ class InternalGuild(raw: RawGuild) : Guild(raw) {
 
     /** Last time we really needed this [Guild].
      *  If this value becomes too old, the [Guild] may be invalidated.
-     *  Refreshed on command invocation
+     *  Refreshed on command invocation, see [GuildCache.touch]
      */
     var lastUsed: Long = System.currentTimeMillis()
 
+    /** Roughly how much memory this [Guild] takes up, in members, channels and roles */
+    val entityCount: Int
+        get() = _members.size + _textChannels.size + _voiceChannels.size + _roles.size
+
     fun update(raw: RawGuild) {
         if (id != raw.id) throw AmqpRejectAndDontRequeueException("Attempt to update $id with the data of ${raw.id}")
 
@@ -132,6 +143,7 @@ class InternalGuild(raw: RawGuild) : Guild(raw) {
         // Note: Roles must be loaded first as members rely on them. Then members, then channels
         _roles = raw.roles.map { InternalRole(this, it) }.associateByTo(ConcurrentHashMap()) { it.id }
         _members = raw.members.map { InternalMember(this, it) }.associateByTo(ConcurrentHashMap()) { it.id }
+        synchronized(memberIndexLock) { memberIndex = null }
         _textChannels = raw.textChannels.map { InternalTextChannel(this, it) }.associateByTo(ConcurrentHashMap()) { it.id }
         _voiceChannels = raw.voiceChannels.map { InternalVoiceChannel(this, it) }.associateByTo(ConcurrentHashMap()) { it.id }
 
@@ -140,11 +152,46 @@ class InternalGuild(raw: RawGuild) : Guild(raw) {
     }
 
     fun handleMemberAdd(member: RawMember) {
-        _members[member.id] = InternalMember(this, member)
+        val internal = InternalMember(this, member)
+        _members[member.id] = internal
+        synchronized(memberIndexLock) { memberIndex?.let { internal.index(it) } }
+    }
+
+    fun handleMemberUpdate(member: RawMember) {
+        val internal = _members[member.id] ?: return
+        internal.update(member)
+        synchronized(memberIndexLock) { memberIndex?.let { internal.index(it) } }
     }
 
     fun handleMemberRemove(id: Long) {
         _members.remove(id)
+        synchronized(memberIndexLock) { memberIndex?.remove(id) }
+    }
+
+    /**
+     * @return the members whose name, name#discrim or nickname may contain the term, or null if the term is too short
+     * to narrow the members down
+     */
+    fun memberSearchCandidates(term: String): List<Member>? {
+        val ids = getMemberIndex().candidates(term) ?: return null
+        val candidates = ArrayList<Member>(ids.size)
+        val iterator = ids.iterator()
+        while (iterator.hasNext()) {
+            _members[iterator.nextLong()]?.let { candidates.add(it) }
+        }
+        return candidates
+    }
+
+    private fun getMemberIndex(): TrigramIndex {
+        memberIndex?.let { return it }
+        // Member events wait for the build to finish, so that none of them are missed by it
+        synchronized(memberIndexLock) {
+            memberIndex?.let { return it }
+            val index = TrigramIndex()
+            _members.values.forEach { it.index(index) }
+            memberIndex = index
+            return index
+        }
     }
 
     fun removeMemberFromAllVoiceChannels(memberId: Long) {
@@ -259,6 +306,11 @@ class InternalMember(guild: Guild, raw: RawMember) : Member(guild, raw) {
         _discrim = raw.discrim
         _nickname = raw.nickname
     }
+
+    /** Indexes what [fredboat.util.ArgumentUtil.fuzzyMemberSearch] matches on */
+    fun index(index: TrigramIndex) {
+        index.put(id, "$name#$discrim", effectiveName)
+    }
 }
 
 /** Note: This is not cached or subject to updates */
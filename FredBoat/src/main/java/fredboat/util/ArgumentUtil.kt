@@ -86,25 +86,76 @@ object ArgumentUtil {
         }
     }
 
+    /**
+     * Search the members of a guild by name, name#discrim, nickname or id. Uses the member index of the guild to only
+     * look at members that may match.
+     *
+     * @param limit how many results to return at most. Results are ranked, exact matches of the name first, then names
+     *              starting with the term, then the rest.
+     */
     @CheckReturnValue
-    fun fuzzyMemberSearch(guild: Guild, term: String, includeBots: Boolean): List<Member> {
-        @Suppress("NAME_SHADOWING")
-        var term = term
+    @JvmOverloads
+    fun fuzzyMemberSearch(guild: Guild, term: String, includeBots: Boolean, limit: Int = Int.MAX_VALUE): List<Member> {
+        val lowered = term.toLowerCase()
+
+        val candidates = (guild as? InternalGuild)?.memberSearchCandidates(lowered)
         val list = ArrayList<Member>()
+        if (candidates == null) {
+            guild.members.values.forEach { if (matchesMember(it, lowered, includeBots)) list.add(it) }
+        } else {
+            // the index only knows about names, ids in the term need to be looked up separately
+            candidates.forEach { if (matchesMember(it, lowered, includeBots)) list.add(it) }
+            membersWithIdIn(guild, lowered).forEach {
+                if ((includeBots || !it.isBot) && !list.contains(it)) list.add(it)
+            }
+        }
 
-        term = term.toLowerCase()
+        if (list.size <= 1) return list
+        val ranked = list.sortedWith(compareBy<Member>({ memberRank(it, lowered) }, { it.effectiveName.length }, { it.id }))
+        return if (ranked.size > limit) ranked.subList(0, limit) else ranked
+    }
 
-        guild.members.forEach { _, mem ->
-            if ((mem.name.toLowerCase() + "#" + mem.discrim).contains(term)
-                    || mem.effectiveName.toLowerCase().contains(term)
-                    || term.contains(mem.id.toString())) {
+    private fun matchesMember(member: Member, lowered: String, includeBots: Boolean): Boolean {
+        if (!includeBots && member.isBot) return false
+        return (member.name.toLowerCase() + "#" + member.discrim).contains(lowered)
+                || member.effectiveName.toLowerCase().contains(lowered)
+                || lowered.contains(member.id.toString())
+    }
 
-                if (!includeBots && mem.isBot) return@forEach
-                list.add(mem)
-            }
+    private fun memberRank(member: Member, lowered: String): Int {
+        val effectiveName = member.effectiveName.toLowerCase()
+        val name = member.name.toLowerCase()
+        return when {
+            effectiveName == lowered || name == lowered -> 0
+            effectiveName.startsWith(lowered) || name.startsWith(lowered) -> 1
+            else -> 2
         }
+    }
 
-        return list
+    /**
+     * @return the members whose id is contained in the term
+     */
+    private fun membersWithIdIn(guild: Guild, term: String): List<Member> {
+        val found = ArrayList<Member>(1)
+        var runStart = -1
+        for (i in 0..term.length) {
+            val isDigit = i < term.length && term[i] in '0'..'9'
+            if (isDigit && runStart < 0) runStart = i
+            if (isDigit || runStart < 0) continue
+
+            // check every number in the run of digits, ids have at most 19 digits
+            for (start in runStart until i) {
+                if (term[start] == '0') continue //ids don't have leading zeros
+                var id = 0L
+                for (end in start until minOf(i, start + 19)) {
+                    id = id * 10 + (term[end] - '0')
+                    if (id < 0) break //overflow
+                    guild.getMember(id)?.let { if (!found.contains(it)) found.add(it) }
+                }
+            }
+            runStart = -1
+        }
+        return found
     }
 
     @CheckReturnValue
@@ -127,7 +178,8 @@ object ArgumentUtil {
     @CheckReturnValue
     @JvmOverloads
     fun checkSingleFuzzyMemberSearchResult(context: CommandContext, term: String, includeBots: Boolean = false): Member? {
-        val list = fuzzyMemberSearch(context.guild, term, includeBots)
+        // one more than we display, so we know whether there were more
+        val list = fuzzyMemberSearch(context.guild, term, includeBots, FUZZY_RESULT_LIMIT + 1)
 
         return when (list.size) {
             0 -> {
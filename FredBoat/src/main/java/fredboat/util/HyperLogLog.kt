@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util
+
+/**
+ * Estimates the number of distinct longs it has been given, in constant memory. Each of the 2^precision registers
+ * takes one byte. The relative standard error of the estimate is 1.04 / sqrt(2^precision), about 0.8% for the
+ * default precision of 14, which takes 16 kB.
+ *
+ * Following HyperLogLog++, values are hashed to 64 bits, so no correction for hash collisions is needed at large
+ * cardinalities, and small cardinalities are counted by linear counting. The empirical bias correction tables of
+ * HyperLogLog++ are not used, instead linear counting is used up to 2.5 times the number of registers, like the
+ * original HyperLogLog does. Not thread safe.
+ */
+class HyperLogLog(val precision: Int = DEFAULT_PRECISION) {
+
+    companion object {
+        const val DEFAULT_PRECISION = 14
+
+        /** Finalizer of MurmurHash3, spreads the bits of ids that only differ in a few of them */
+        private fun hash(value: Long): Long {
+            var h = value
+            h = h xor (h ushr 33)
+            h *= -0xae502812aa7333L // 0xff51afd7ed558ccd
+            h = h xor (h ushr 33)
+            h *= -0x3b314601e57a13adL // 0xc4ceb9fe1a85ec53
+            h = h xor (h ushr 33)
+            return h
+        }
+    }
+
+    init {
+        require(precision in 4..18) { "Precision must be between 4 and 18, got $precision" }
+    }
+
+    private val registerCount = 1 shl precision
+    private val registers = ByteArray(registerCount)
+
+    /** Relative standard error of [cardinality] */
+    val relativeStandardError: Double
+        get() = 1.04 / Math.sqrt(registerCount.toDouble())
+
+    val memoryBytes: Int
+        get() = registerCount
+
+    fun add(value: Long) {
+        val h = hash(value)
+        val index = (h ushr (64 - precision)).toInt()
+        val rest = h shl precision
+        // position of the first set bit in the remaining 64 - precision bits
+        val rank = if (rest == 0L) 64 - precision + 1 else java.lang.Long.numberOfLeadingZeros(rest) + 1
+        if (rank > registers[index]) registers[index] = rank.toByte()
+    }
+
+    /**
+     * Adds all values seen by the other estimator to this one.
+     */
+    fun merge(other: HyperLogLog) {
+        require(other.precision == precision) { "Can't merge estimators of different precision" }
+        for (i in registers.indices) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i]
+        }
+    }
+
+    fun cardinality(): Long {
+        var sum = 0.0
+        var zeros = 0
+        for (register in registers) {
+            sum += 1.0 / (1L shl register.toInt())
+            if (register.toInt() == 0) zeros++
+        }
+
+        val m = registerCount.toDouble()
+        val alpha = when (registerCount) {
+            16 -> 0.673
+            32 -> 0.697
+            64 -> 0.709
+            else -> 0.7213 / (1 + 1.079 / m)
+        }
+        val estimate = alpha * m * m / sum
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log(m / zeros))
+        }
+        return Math.round(estimate)
+    }
+}
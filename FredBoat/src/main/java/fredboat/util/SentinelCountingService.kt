@@ -3,7 +3,11 @@ package fredboat.util
 import com.fredboat.sentinel.entities.ExtendedShardInfo
 import fredboat.config.property.AppConfig
 import fredboat.sentinel.Sentinel
+import it.unimi.dsi.fastutil.Hash
+import it.unimi.dsi.fastutil.HashCommon
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Service
 import reactor.core.publisher.Mono
 import reactor.core.publisher.toMono
@@ -16,11 +20,14 @@ class SentinelCountingService(private val sentinel: Sentinel, appConfig: AppConf
     private val estimatedUsers = (30000 + 5000) * appConfig.shardCount
 
     private var cachedCounts: Counts = Counts(0,0,0,0,0,0, emptyList())
-    private var cachedUserCount = 0
+    private var cachedUserCount = UniqueUserCount(0, false, 0.0, 0)
+    @Volatile
     private var countsCacheTime = 0L
+    @Volatile
     private var userCountCacheTime = 0L
 
     companion object {
+        private val log: Logger = LoggerFactory.getLogger(SentinelCountingService::class.java)
         private const val COUNTS_TIMEOUT = 60000 // 1 minute
         private const val USERS_TIMEOUT = 10 * 60000 // 10 minutes
     }
@@ -41,6 +48,7 @@ class SentinelCountingService(private val sentinel: Sentinel, appConfig: AppConf
                     .doOnComplete {
                         val result = Counts(guilds, roles, textChannels, voiceChannels, categories, emotes, shards)
                         cachedCounts = result
+                        countsCacheTime = System.currentTimeMillis()
                         sink.success(result)
                     }
                     .doOnError { sink.error(it) }
@@ -58,25 +66,62 @@ class SentinelCountingService(private val sentinel: Sentinel, appConfig: AppConf
 
     /**
      * The day that we reach 2,147,483,647 users will be a glorious one
+     *
+     * @return an estimate of the unique users, see [countUniqueUsers]
      */
     fun getUniqueUserCount(): Mono<Int> {
-        if(userCountCacheTime + USERS_TIMEOUT > System.currentTimeMillis()) return cachedUserCount.toMono()
+        if(userCountCacheTime + USERS_TIMEOUT > System.currentTimeMillis()) return cachedUserCount.count.toMono()
 
-        return Mono.create { sink ->
-            val set = LongOpenHashSet(estimatedUsers)
+        return countUniqueUsers(exact = false).map { it.count }
+    }
+
+    /**
+     * Counts the unique users across all Sentinels. By default their ids are fed into a [HyperLogLog], which needs
+     * 16 kB no matter how many users there are. The exact count needs a set of all ids, which on large bots takes
+     * hundreds of MB.
+     *
+     * @param exact whether to count exactly instead of estimating
+     */
+    fun countUniqueUsers(exact: Boolean = false): Mono<UniqueUserCount> {
+        val started = System.currentTimeMillis()
+        val counting: Mono<UniqueUserCount> = if (exact) {
             sentinel.getFullSentinelUserList()
-                    .doOnComplete {
-                        val sum = set.size
-                        cachedUserCount = sum
-                        sink.success(sum)
-                    }.doOnError { sink.error(it) }
-                    .subscribe { set.add(it) }
+                    .collect({ LongOpenHashSet(estimatedUsers) }, { set, id -> set.add(id) })
+                    .map {
+                        // the backing array of the set, which is sized for the expected users at least
+                        val memory = HashCommon.arraySize(Math.max(it.size, estimatedUsers), Hash.DEFAULT_LOAD_FACTOR) * 8L
+                        UniqueUserCount(it.size, true, 0.0, memory)
+                    }
+        } else {
+            sentinel.getFullSentinelUserList()
+                    .collect({ HyperLogLog() }, { hll, id -> hll.add(id) })
+                    .map { UniqueUserCount(it.cardinality().toInt(), false, it.relativeStandardError, it.memoryBytes.toLong()) }
+        }
+
+        return counting.doOnNext {
+            cachedUserCount = it
+            userCountCacheTime = System.currentTimeMillis()
+            log.info("Counted {}{} unique users in {}ms{}, using {} kB", if (it.exact) "" else "~", it.count,
+                    System.currentTimeMillis() - started,
+                    if (it.exact) "" else String.format(" (standard error %.2f%%)", it.relativeStandardError * 100),
+                    it.memoryBytes / 1024)
         }
     }
 
     fun getAllCounts(): Mono<Tuple2<Counts, Int>> = Mono.zip(getCounts(), getUniqueUserCount())
 
-    fun getAllCountsCached() = cachedCounts to cachedUserCount
+    fun getAllCountsCached() = cachedCounts to cachedUserCount.count
+
+    /** When the counts last returned by [getCounts] were taken, in epoch millis */
+    val countsTime: Long
+        get() = countsCacheTime
+
+    /** When the count last returned by [getUniqueUserCount] was taken, in epoch millis */
+    val uniqueUserCountTime: Long
+        get() = userCountCacheTime
+
+    val uniqueUserCountCached: UniqueUserCount
+        get() = cachedUserCount
 
     data class Counts(
             val guilds: Long,
@@ -87,4 +132,15 @@ class SentinelCountingService(private val sentinel: Sentinel, appConfig: AppConf
             val emotes: Long,
             val shards: List<ExtendedShardInfo>
     )
+
+    /**
+     * @param relativeStandardError of the count, 0 if it is exact
+     * @param memoryBytes roughly how much memory counting took, not including the id lists received from Sentinel
+     */
+    data class UniqueUserCount(
+            val count: Int,
+            val exact: Boolean,
+            val relativeStandardError: Double,
+            val memoryBytes: Long
+    )
 }
\ No newline at end of file
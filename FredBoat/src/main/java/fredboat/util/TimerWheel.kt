@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongArrayList
+
+/**
+ * Hashed timer wheel for deadlines of long keys, like guild ids. Scheduling and cancelling take constant time, and
+ * [advance] only visits the slots of the ticks that passed since its last call, so its cost depends on the deadlines
+ * that are due rather than on all of them. Deadlines more than one revolution of the wheel away stay in their slot
+ * until a later revolution.
+ *
+ * Keys expire on the first [advance] at or after their deadline that crosses into the tick of the deadline, so they
+ * may expire up to one tick late. Not thread safe.
+ *
+ * @param tickMillis resolution of the wheel
+ * @param wheelSize  amount of slots, a revolution takes tickMillis * wheelSize
+ */
+class TimerWheel(private val tickMillis: Long, wheelSize: Int, startMillis: Long = System.currentTimeMillis()) {
+
+    private val slots = Array(wheelSize) { Long2LongOpenHashMap() } // key -> deadline
+    private val slotOfKey = Long2IntOpenHashMap().apply { defaultReturnValue(-1) }
+    private var currentTick = startMillis / tickMillis // the last tick that has been advanced over
+
+    val size: Int
+        get() = slotOfKey.size
+
+    operator fun contains(key: Long) = slotOfKey.containsKey(key)
+
+    /**
+     * Schedules the key, replacing any deadline it had. Deadlines in the past expire on the next tick.
+     */
+    fun schedule(key: Long, deadlineMillis: Long) {
+        cancel(key)
+        val tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1)
+        val slot = (tick % slots.size).toInt()
+        slots[slot].put(key, deadlineMillis)
+        slotOfKey.put(key, slot)
+    }
+
+    /**
+     * @return the deadline of the key, or null if it is not scheduled
+     */
+    fun deadline(key: Long): Long? {
+        val slot = slotOfKey.get(key)
+        return if (slot < 0) null else slots[slot].get(key)
+    }
+
+    /**
+     * @return true if the key was scheduled
+     */
+    fun cancel(key: Long): Boolean {
+        val slot = slotOfKey.remove(key)
+        if (slot < 0) return false
+        slots[slot].remove(key)
+        return true
+    }
+
+    /**
+     * Moves the wheel forward to the given time.
+     *
+     * @return the keys whose deadlines have passed, they are no longer scheduled
+     */
+    fun advance(nowMillis: Long): LongArrayList {
+        val expired = LongArrayList()
+        val targetTick = nowMillis / tickMillis
+        if (targetTick <= currentTick) return expired
+
+        // visiting each slot once is enough, no matter how much time passed
+        val ticks = Math.min(targetTick - currentTick, slots.size.toLong())
+        for (i in 1..ticks) {
+            val entries = slots[((currentTick + i) % slots.size).toInt()]
+            if (entries.isEmpty()) continue
+            val iterator = entries.long2LongEntrySet().fastIterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                if (entry.longValue > nowMillis) continue // due in a later revolution
+                expired.add(entry.longKey)
+                slotOfKey.remove(entry.longKey)
+                iterator.remove()
+            }
+        }
+        currentTick = targetTick
+        return expired
+    }
+
+    fun clear() {
+        slots.forEach { it.clear() }
+        slotOfKey.clear()
+    }
+}
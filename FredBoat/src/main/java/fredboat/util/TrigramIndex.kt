@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import it.unimi.dsi.fastutil.longs.LongSet
+
+/**
+ * Maps ids to the trigrams of the strings they are known by, to find the ids whose strings may contain a search term
+ * without looking at all of them. Strings and terms are lowercased. Results are candidates only: any id whose strings
+ * contain the term is among them, but the caller has to verify each candidate.
+ */
+class TrigramIndex {
+
+    companion object {
+        const val GRAM_LENGTH = 3
+
+        private fun gram(s: String, i: Int): Long =
+                (s[i].toLong() shl 32) or (s[i + 1].toLong() shl 16) or s[i + 2].toLong()
+    }
+
+    // trigram -> ids of the strings it occurs in
+    private val postings = Long2ObjectOpenHashMap<LongOpenHashSet>()
+    // id -> its trigrams, so that it can be removed again
+    private val grams = Long2ObjectOpenHashMap<LongArray>()
+
+    val size: Int
+        @Synchronized get() = grams.size
+
+    /** Indexes the strings of the id, replacing whatever was indexed for it before */
+    @Synchronized
+    fun put(id: Long, vararg strings: String) {
+        remove(id)
+        val idGrams = LongOpenHashSet()
+        for (string in strings) {
+            val lowered = string.toLowerCase()
+            for (i in 0..lowered.length - GRAM_LENGTH) {
+                idGrams.add(gram(lowered, i))
+            }
+        }
+
+        val array = idGrams.toLongArray()
+        grams.put(id, array)
+        for (gram in array) {
+            var ids = postings.get(gram)
+            if (ids == null) {
+                ids = LongOpenHashSet(4)
+                postings.put(gram, ids)
+            }
+            ids.add(id)
+        }
+    }
+
+    @Synchronized
+    fun remove(id: Long) {
+        val array = grams.remove(id) ?: return
+        for (gram in array) {
+            val ids = postings.get(gram) ?: continue
+            ids.remove(id)
+            if (ids.isEmpty()) postings.remove(gram)
+        }
+    }
+
+    /**
+     * @return the ids whose strings may contain the term, or null if the term is too short to narrow them down
+     */
+    @Synchronized
+    fun candidates(term: String): LongSet? {
+        val lowered = term.toLowerCase()
+        if (lowered.length < GRAM_LENGTH) return null
+
+        val lists = ArrayList<LongOpenHashSet>(lowered.length - GRAM_LENGTH + 1)
+        for (i in 0..lowered.length - GRAM_LENGTH) {
+            val ids = postings.get(gram(lowered, i)) ?: return LongOpenHashSet(0)
+            lists.add(ids)
+        }
+        lists.sortBy { it.size }
+
+        // start out with the rarest trigram, and keep only what all the others have too
+        val result = LongOpenHashSet(lists[0])
+        for (i in 1 until lists.size) {
+            if (result.isEmpty()) break
+            val iterator = result.iterator()
+            while (iterator.hasNext()) {
+                if (!lists[i].contains(iterator.nextLong())) iterator.remove()
+            }
+        }
+        return result
+    }
+}
@@ -63,11 +63,15 @@ public class Blacklist {
 
     private final BlacklistService blacklistService; //implementation as a RestRepo includes a cache
 
+    private final BlacklistIndex index;
+
 
     public Blacklist(BlacklistService blacklistService, Set<Long> userWhiteList, long rateLimitHitsBeforeBlacklist) {
         this.blacklistService = blacklistService;
         this.rateLimitHitsBeforeBlacklist = rateLimitHitsBeforeBlacklist;
         this.userWhiteList = Collections.unmodifiableSet(userWhiteList);
+        this.index = new BlacklistIndex(
+                entry -> entry.getBlacklistedTimestamp() + getBlacklistTimeLength(entry.getLevel()));
     }
 
     /**
@@ -82,18 +86,14 @@ public class Blacklist {
         //first of all, ppl that can never get blacklisted no matter what
         if (userWhiteList.contains(id)) return false;
 
-        BlacklistEntry blEntry = blacklistService.fetchBlacklistEntry(id);
-        if (blEntry.getLevel() < 0) return false; //blacklist entry exists, but id hasn't actually been blacklisted yet
-
-
-        //id was a blacklisted, but it has run out
-        //noinspection RedundantIfStatement
-        if (System.currentTimeMillis() > blEntry.getBlacklistedTimestamp() + (getBlacklistTimeLength(blEntry.getLevel()))) {
-            return false;
+        //almost nobody is blacklisted, so only look up the entries of ids we haven't seen recently
+        long blacklistEnd = index.getBlacklistEnd(id);
+        if (blacklistEnd == BlacklistIndex.UNKNOWN) {
+            blacklistEnd = index.seed(blacklistService.fetchBlacklistEntry(id));
         }
 
-        //looks like this id is blacklisted ¯\_(ツ)_/¯
-        return true;
+        //an id that has never been blacklisted, or whose blacklisting has run out, is not blacklisted
+        return System.currentTimeMillis() <= blacklistEnd;
     }
 
     /**
@@ -127,9 +127,9 @@ public class Blacklist {
 
                 blacklistingLength = getBlacklistTimeLength(blEntry.getLevel());
             }
-            //persist it
-            //if this turns up to be a performance bottleneck, have an agent run that persists the blacklist occasionally
-            blacklistService.mergeBlacklistEntry(blEntry);
+            index.update(blEntry);
+            //persist it. this is deferred, repeated hits during an abuse wave are coalesced into a single write
+            blacklistService.mergeBlacklistEntryDeferred(blEntry);
             return blacklistingLength;
         }
     }
@@ -139,6 +139,7 @@ public class Blacklist {
      */
     public void liftBlacklist(long id) {
         blacklistService.deleteBlacklistEntry(id);
+        index.lift(id);
     }
 
     /**
@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util.ratelimit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import fredboat.db.transfer.BlacklistEntry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Local index of when the blacklistings of recently seen ids end, so that repeated blacklist checks of the same id do
+ * not have to look up its blacklist entry, which for the vast majority of ids says that it was never blacklisted.
+ * <p>
+ * The backend can't list the blacklisted ids, so the index is filled from the entries that pass through the blacklist:
+ * entries looked up for ids the index does not know, and entries we change ourselves when issuing or lifting a
+ * blacklisting. Our own changes always win over lookups that raced with them. Indexed ids are forgotten after a while,
+ * so changes made by other processes sharing the backend are picked up eventually.
+ */
+public class BlacklistIndex {
+
+    /**
+     * Returned by {@link #getBlacklistEnd(long)} for ids that are not indexed
+     */
+    public static final long UNKNOWN = -1;
+
+    private static final long NOT_BLACKLISTED = 0;
+
+    private final ToLongFunction<BlacklistEntry> blacklistEnd;
+
+    //id -> end of its blacklisting in epoch millis, NOT_BLACKLISTED if it has never been blacklisted
+    private final Cache<Long, Long> ends = CacheBuilder.newBuilder()
+            .expireAfterWrite(30, TimeUnit.MINUTES)
+            .maximumSize(100_000)
+            .build();
+
+    /**
+     * @param blacklistEnd calculates the end of the blacklisting of an entry in epoch millis
+     */
+    public BlacklistIndex(ToLongFunction<BlacklistEntry> blacklistEnd) {
+        this.blacklistEnd = blacklistEnd;
+    }
+
+    /**
+     * @return the end of the blacklisting of the id in epoch millis, which may be in the past, or {@link #UNKNOWN}
+     */
+    public long getBlacklistEnd(long id) {
+        Long end = ends.getIfPresent(id);
+        return end == null ? UNKNOWN : end;
+    }
+
+    /**
+     * Indexes an entry that was looked up. It does not replace what a concurrent {@link #update(BlacklistEntry)} or
+     * {@link #lift(long)} indexed in the meantime.
+     *
+     * @return the indexed end of the blacklisting of the id in epoch millis
+     */
+    public long seed(BlacklistEntry entry) {
+        long end = endOf(entry);
+        Long previous = ends.asMap().putIfAbsent(entry.getId(), end);
+        return previous == null ? end : previous;
+    }
+
+    /**
+     * Indexes an entry that we changed.
+     */
+    public void update(BlacklistEntry entry) {
+        ends.put(entry.getId(), endOf(entry));
+    }
+
+    /**
+     * Indexes an id whose blacklist entry we deleted.
+     */
+    public void lift(long id) {
+        ends.put(id, NOT_BLACKLISTED);
+    }
+
+    public long size() {
+        return ends.size();
+    }
+
+    private long endOf(BlacklistEntry entry) {
+        return entry.getLevel() < 0 ? NOT_BLACKLISTED : blacklistEnd.applyAsLong(entry);
+    }
+}
@@ -24,42 +24,47 @@
 
 package fredboat.util.ratelimit;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import fredboat.messaging.internal.Context;
-import fredboat.util.rest.CacheUtil;
-import io.prometheus.client.guava.cache.CacheMetricsCollector;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 /**
  * Created by napster on 17.04.17.
  * <p>
- * This class uses an algorithm based on leaky bucket, but is optimized, mainly we work around having tons of threads for
- * each bucket filling/emptying it, instead saving timestamps. As a result this class works better for shorter time
- * periods, as the amount of timestamps to hold decreases.
- * some calculations can be found here: https://docs.google.com/spreadsheets/d/1Afdn25AsFD-v3WQGp56rfVwO1y2d105IQk3dtfTcKwA/edit#gid=0
+ * Implements the generic cell rate algorithm (GCRA): instead of keeping the timestamps of recent requests, we keep a
+ * single theoretical arrival time (TAT) per id. Each request pushes it into the future by the emission interval
+ * (timeSpan / maxRequests), and a request is allowed as long as the TAT is less than a full time span ahead of now,
+ * which allows bursts of maxRequests. The TAT is updated with a compare-and-set, so there is no locking involved.
  */
 public class Ratelimit {
 
     private final static Logger log = LoggerFactory.getLogger(Ratelimit.class);
 
+    private final String name;
     private final ExecutorService executorService;
 
     public enum Scope {USER, GUILD}
 
-    private final LoadingCache<Long, Rate> rates;
-    private final long maxRequests;
+    //id -> theoretical arrival time in nanoTime. ids whose TAT has passed are as good as unknown ones, and get purged
+    private final ConcurrentHashMap<Long, AtomicLong> tats = new ConcurrentHashMap<>();
+    private final AtomicBoolean purging = new AtomicBoolean(false);
+    private volatile long lastPurge = System.nanoTime();
+
     private final long timeSpan;
+    //nanoseconds each request adds to the TAT
+    private final long emissionInterval;
+    //how far ahead of now the TAT may be for a request to still be allowed
+    private final long burstTolerance;
 
     //users that can never be limited
     private final Set<Long> userWhiteList;
@@ -74,6 +79,10 @@ public class Ratelimit {
     //show this to the user when they hit the ratelimit
     private final Function<Context, String> message;
 
+    public String getName() {
+        return name;
+    }
+
     public Class getClazz() {
         return clazz;
     }
@@ -83,8 +92,7 @@ public class Ratelimit {
     }
 
     /**
-     * @param name          name of this ratelimit, will be used to register at the cache metrics
-     * @param cacheMetrics  metrics collector to register the rates cache of this ratelimit with
+     * @param name          name of this ratelimit
      * @param executorService executor to issue bans with (which may result in a database access, so they are kept off main thread)
      * @param userWhiteList whitelist of user that should never be rate limited or blacklisted by this object
      * @param scope         on which scope this rate limiter shall operate
@@ -93,21 +101,15 @@ public class Ratelimit {
      * @param clazz         the optional (=can be null) clazz of commands to be ratelimited by this ratelimiter
      * @param message       message to show to users that hit a ratelimit. accept a context which can be used for i18ning the message
      */
-    public Ratelimit(String name, CacheMetricsCollector cacheMetrics, ExecutorService executorService,
-                     Set<Long> userWhiteList, Scope scope, long maxRequests, long milliseconds, Class clazz,
-                     Function<Context, String> message) {
+    public Ratelimit(String name, ExecutorService executorService, Set<Long> userWhiteList, Scope scope,
+                     long maxRequests, long milliseconds, Class clazz, Function<Context, String> message) {
+        this.name = name;
         this.executorService = executorService;
-        rates = CacheBuilder.newBuilder()
-                .recordStats()
-                //we can completely forget the object after this period, the rates would be reset anyways
-                .expireAfterAccess(milliseconds, TimeUnit.MILLISECONDS)
-                .build(CacheLoader.from(Rate::new));
-        cacheMetrics.addCache(name + "Ratelimit", rates);
-
         this.userWhiteList = Collections.unmodifiableSet(userWhiteList);
         this.scope = scope;
-        this.maxRequests = maxRequests;
         this.timeSpan = milliseconds;
+        this.emissionInterval = TimeUnit.MILLISECONDS.toNanos(milliseconds) / maxRequests;
+        this.burstTolerance = TimeUnit.MILLISECONDS.toNanos(milliseconds) - emissionInterval;
         this.clazz = clazz;
         this.message = message;
     }
@@ -120,7 +122,7 @@ public class Ratelimit {
      * @return a RateResult object containing information whether the users request is rate limited or not and the reason for that
      * <p>
      * Caveat: This allows requests to overstep the ratelimit with single high weight requests.
-     * The clearing of timestamps ensures it will take longer for them to get available again though.
+     * The TAT is pushed ahead by the full weight though, so it will take longer for them to get available again.
      */
     public boolean isAllowed(Context context, int weight, @Nullable Blacklist blacklist) {
         //This gets called real often, right before every command execution. Keep it light, don't do any blocking stuff,
@@ -134,35 +136,9 @@ public class Ratelimit {
             id = context.getGuild().getId();
         }
 
-        Rate rate = CacheUtil.getUncheckedUnwrapped(rates, id);
-        if (rate == null) {
-            log.warn("Shiver me timbers, cache calling new Rate({}) returned null", id);
-            return true; //not expected to happen, let it slip in a user friendly way
-        }
-
-        //synchronize on the individual rate objects since we are about to change and save them
-        // we can use these to synchronize because they are backed by a cache, subsequent calls to fetch them
-        // will return the same object
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (rate) {
-            long now = System.currentTimeMillis();
-
-            //clear outdated timestamps
-            long maxTimeStampsToClear = (now - rate.lastUpdated) * maxRequests / timeSpan;
-            long cleared = 0;
-            while (rate.timeStamps.size() > 0 && rate.timeStamps.getLong(0) + timeSpan < now && cleared < maxTimeStampsToClear) {
-                rate.timeStamps.removeLong(0);
-                cleared++;
-            }
-
-            rate.lastUpdated = now;
-            //ALLOWED?
-            if (rate.timeStamps.size() < maxRequests) {
-                for (int i = 0; i < weight; i++)
-                    rate.timeStamps.add(now);
-                //everything is fine, get out of this method
-                return true;
-            }
+        if (tryAcquire(id, weight)) {
+            //everything is fine, get out of this method
+            return true;
         }
 
         //reaching this point in the code means a rate limit was hit
@@ -173,6 +149,55 @@ public class Ratelimit {
         return false;
     }
 
+    /**
+     * @return true if the request of the id with the given weight is allowed, in which case it has been accounted for
+     */
+    public boolean tryAcquire(long id, int weight) {
+        long now = System.nanoTime();
+        purgeIfDue(now);
+
+        AtomicLong tat = tats.get(id);
+        if (tat == null) {
+            tat = tats.computeIfAbsent(id, __ -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long current = tat.get();
+            //a TAT in the past means the id has its full burst available
+            long base = current - now < 0 ? now : current;
+            if (base - now > burstTolerance) {
+                return false;
+            }
+            if (tat.compareAndSet(current, base + weight * emissionInterval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Forgets ids whose TAT has passed once per time span, on the executor. An id that is allowed a request right
+     * while being purged may get its next request for free; we can live with that.
+     */
+    private void purgeIfDue(long now) {
+        if (now - lastPurge < TimeUnit.MILLISECONDS.toNanos(timeSpan) || !purging.compareAndSet(false, true)) {
+            return;
+        }
+        lastPurge = now;
+        try {
+            executorService.execute(() -> {
+                try {
+                    long purgeTime = System.nanoTime();
+                    tats.values().removeIf(tat -> tat.get() - purgeTime < 0);
+                } finally {
+                    purging.set(false);
+                }
+            });
+        } catch (Exception e) {
+            purging.set(false);
+            log.warn("Could not submit purge of outdated rates", e);
+        }
+    }
+
     /**
      * Notifies the autoblacklist that a user has hit a limit, and handles the response of the blacklist
      * Best run async as the blacklist might be hitting a database
@@ -191,30 +216,7 @@ public class Ratelimit {
     /**
      * completely resets a limit for an id (user or guild for example)
      */
-    public synchronized void liftLimit(long id) {
-        rates.invalidate(id);
-    }
-
-    class Rate {
-        //to whom this belongs
-        final long id;
-
-        //last time this object was updated
-        //useful for keeping track of how many timeStamps should be removed to ensure the limit is enforced
-        long lastUpdated;
-
-        //collects the requests
-        LongArrayList timeStamps;
-
-        private Rate(long id) {
-            this.id = id;
-            this.lastUpdated = System.currentTimeMillis();
-            this.timeStamps = new LongArrayList();
-        }
-
-        @Override
-        public int hashCode() {
-            return Long.hashCode(id);
-        }
+    public void liftLimit(long id) {
+        tats.remove(id);
     }
 }
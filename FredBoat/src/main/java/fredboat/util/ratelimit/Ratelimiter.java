@@ -36,7 +36,6 @@ import fredboat.db.api.BlacklistService;
 import fredboat.feature.metrics.Metrics;
 import fredboat.messaging.internal.Context;
 import fredboat.util.TextUtils;
-import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
@@ -63,8 +62,7 @@ public class Ratelimiter {
     @Nullable
     private final Blacklist autoBlacklist;
 
-    public Ratelimiter(AppConfig appConfig, ExecutorService executor, BlacklistService blacklistService,
-                       CacheMetricsCollector cacheMetrics) {
+    public Ratelimiter(AppConfig appConfig, ExecutorService executor, BlacklistService blacklistService) {
         Set<Long> whitelist = ConcurrentHashMap.newKeySet();
 
         //only works for those admins who are added with their userId and not through a roleId
@@ -87,20 +85,20 @@ public class Ratelimiter {
         Function<Context, String> playlistMessage = context -> context.i18n("ratelimitedGuildSlowLoadingPlaylist");
 
         //sort these by harsher limits coming first
-        ratelimits.add(new Ratelimit("userShardsComm", cacheMetrics, executor, whitelist, Ratelimit.Scope.USER,
+        ratelimits.add(new Ratelimit("userShardsComm", executor, whitelist, Ratelimit.Scope.USER,
                 2, 30000, ShardsCommand.class, defaultUserMessage));
-        ratelimits.add(new Ratelimit("userSkipComm", cacheMetrics, executor, whitelist, Ratelimit.Scope.USER,
+        ratelimits.add(new Ratelimit("userSkipComm", executor, whitelist, Ratelimit.Scope.USER,
                 5, 20000, SkipCommand.class, skipMessage));
-        ratelimits.add(new Ratelimit("userExportComm", cacheMetrics, executor, whitelist, Ratelimit.Scope.USER,
+        ratelimits.add(new Ratelimit("userExportComm", executor, whitelist, Ratelimit.Scope.USER,
                 2, 60000, ExportCommand.class, defaultUserMessage));
-        ratelimits.add(new Ratelimit("userAllComms", cacheMetrics, executor, whitelist, Ratelimit.Scope.USER,
+        ratelimits.add(new Ratelimit("userAllComms", executor, whitelist, Ratelimit.Scope.USER,
                 5, 10000, JCommand.class, defaultUserMessage));
 
-        ratelimits.add(new Ratelimit("guildWeatherComm", cacheMetrics, executor, whitelist, Ratelimit.Scope.GUILD,
+        ratelimits.add(new Ratelimit("guildWeatherComm", executor, whitelist, Ratelimit.Scope.GUILD,
                 30, 180000, WeatherCommand.class, defaultGuildMessage));
-        ratelimits.add(new Ratelimit("guildSongsAdded", cacheMetrics, executor, whitelist, Ratelimit.Scope.GUILD,
+        ratelimits.add(new Ratelimit("guildSongsAdded", executor, whitelist, Ratelimit.Scope.GUILD,
                 1000, 120000, PlaylistInfo.class, playlistMessage));
-        ratelimits.add(new Ratelimit("guildAllComms", cacheMetrics, executor, whitelist, Ratelimit.Scope.GUILD,
+        ratelimits.add(new Ratelimit("guildAllComms", executor, whitelist, Ratelimit.Scope.GUILD,
                 10, 10000, JCommand.class, defaultGuildMessage));
     }
 
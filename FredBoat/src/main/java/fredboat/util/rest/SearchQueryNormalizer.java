@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util.rest;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Turns search queries into a canonical form that is used as the key for cached search results, so that trivially
+ * different spellings of the same search share one cache entry.
+ * <p>
+ * The query is unicode normalized (NFKC), case folded, punctuation is removed and runs of whitespace are collapsed
+ * into single spaces. Optionally the words are sorted, which makes the key independent of word order.
+ * Symbols like + or # are kept, since they can change what a search is about.
+ */
+public class SearchQueryNormalizer {
+
+    public static final SearchQueryNormalizer DEFAULT = new SearchQueryNormalizer(false);
+
+    //unicode files these under other punctuation, together with sentence marks like ! or ?. unlike those, they
+    // carry meaning in a search: "c#", "r&b", "ac/dc", "100%"
+    private static final String KEPT_OTHER_PUNCTUATION = "#%&*@/\\";
+
+    private final boolean sortTokens;
+
+    public SearchQueryNormalizer(boolean sortTokens) {
+        this.sortTokens = sortTokens;
+    }
+
+    public String normalize(String query) {
+        String input = Normalizer.isNormalized(query, Normalizer.Form.NFKC)
+                ? query
+                : Normalizer.normalize(query, Normalizer.Form.NFKC);
+
+        StringBuilder result = new StringBuilder(input.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < input.length(); ) {
+            int codePoint = input.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                pendingSpace = result.length() > 0;
+                continue;
+            }
+            if (isPunctuation(codePoint)) {
+                continue;
+            }
+            if (pendingSpace) {
+                result.append(' ');
+                pendingSpace = false;
+            }
+            result.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint)));
+        }
+
+        if (!sortTokens) {
+            return result.toString();
+        }
+        String[] tokens = result.toString().split(" ");
+        Arrays.sort(tokens);
+        return String.join(" ", tokens);
+    }
+
+    private static boolean isPunctuation(int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+                return true;
+            case Character.OTHER_PUNCTUATION:
+                return KEPT_OTHER_PUNCTUATION.indexOf(codePoint) < 0;
+            default:
+                return false;
+        }
+    }
+}
@@ -25,6 +25,8 @@
 
 package fredboat.util.rest;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
@@ -38,6 +40,7 @@ import fredboat.db.transfer.SearchResult;
 import fredboat.definitions.SearchProvider;
 import fredboat.feature.metrics.Metrics;
 import fredboat.feature.togglz.FeatureFlags;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -45,9 +48,11 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -60,6 +65,7 @@ public class TrackSearcher {
     public static final long DEFAULT_CACHE_MAX_AGE = TimeUnit.HOURS.toMillis(48);
     public static final String PUNCTUATION_REGEX = "[.,/#!$%^&*;:{}=\\-_`~()\"\']";
     private static final int DEFAULT_TIMEOUT = 3000;
+    private static final long LOCAL_CACHE_MAX_WEIGHT = 16 * 1024 * 1024; //roughly bytes of encoded search results
 
     private static final Logger log = LoggerFactory.getLogger(TrackSearcher.class);
 
@@ -73,14 +79,32 @@ public class TrackSearcher {
     private final AppConfig appConfig;
     private final ExecutorService executor;
 
+    //in-process cache in front of the search result service, so that popular searches don't need a rest call.
+    // the values hold the encoded search results, each hit decodes them into fresh tracks
+    private final Cache<SearchResult.SearchResultId, SearchResult> localCache = CacheBuilder.newBuilder()
+            .recordStats()
+            .expireAfterWrite(DEFAULT_CACHE_MAX_AGE, TimeUnit.MILLISECONDS)
+            .maximumWeight(LOCAL_CACHE_MAX_WEIGHT)
+            .<SearchResult.SearchResultId, SearchResult>weigher((id, result) ->
+                    result.getSerializedSize() + id.getSearchTerm().length())
+            .build();
+
+    //searches keyed like before query normalization, that would have been cached by now. used to tell which cache
+    // hits are owed to the normalization
+    private final Cache<SearchResult.SearchResultId, Boolean> rawKeysSeen = CacheBuilder.newBuilder()
+            .expireAfterWrite(DEFAULT_CACHE_MAX_AGE, TimeUnit.MILLISECONDS)
+            .maximumSize(100_000)
+            .build();
+
     public TrackSearcher(@Qualifier("searchAudioPlayerManager") AudioPlayerManager audioPlayerManager,
                          YoutubeAPI youtubeAPI, SearchResultService searchResultService, AppConfig appConfig,
-                         ExecutorService executor) {
+                         ExecutorService executor, CacheMetricsCollector cacheMetrics) {
         this.audioPlayerManager = audioPlayerManager;
         this.youtubeAPI = youtubeAPI;
         this.searchResultService = searchResultService;
         this.appConfig = appConfig;
         this.executor = executor;
+        cacheMetrics.addCache("localSearchResults", localCache);
     }
 
     public AudioPlaylist searchForTracks(String query, List<SearchProvider> providers) throws SearchingException {
@@ -110,17 +134,31 @@ public class TrackSearcher {
         }
 
         SearchingException searchingException = null;
+        String cacheKey = cacheKey(query);
 
         for (SearchProvider provider : provs) {
-            //1. cache
-            AudioPlaylist cacheResult = fromCache(provider, query, cacheMaxAge);
+            SearchResult.SearchResultId id = new SearchResult.SearchResultId(provider, cacheKey);
+            SearchResult.SearchResultId rawId = new SearchResult.SearchResultId(provider, rawCacheKey(query));
+
+            //1. local cache
+            AudioPlaylist localCacheResult = fromLocalCache(id, cacheMaxAge);
+            if (localCacheResult != null && !localCacheResult.getTracks().isEmpty()) {
+                log.debug("Loaded search result {} {} from local cache", provider, query);
+                Metrics.searchHits.labels("local-cache").inc();
+                countNormalizedHit(rawId, "local-cache");
+                return localCacheResult;
+            }
+
+            //2. remote cache
+            AudioPlaylist cacheResult = fromCache(id, cacheMaxAge);
             if (cacheResult != null && !cacheResult.getTracks().isEmpty()) {
                 log.debug("Loaded search result {} {} from cache", provider, query);
                 Metrics.searchHits.labels("cache").inc();
+                countNormalizedHit(rawId, "cache");
                 return cacheResult;
             }
 
-            //2. lavaplayer todo break up this beautiful construction of ifs and exception handling in a better readable one?
+            //3. lavaplayer todo break up this beautiful construction of ifs and exception handling in a better readable one?
             if (provider != SearchProvider.YOUTUBE || System.currentTimeMillis() > youtubeCooldownUntil) {
                 try {
                     AudioPlaylist lavaplayerResult = new SearchResultHandler()
@@ -128,8 +166,7 @@ public class TrackSearcher {
                     if (!lavaplayerResult.getTracks().isEmpty()) {
                         log.debug("Loaded search result {} {} from lavaplayer", provider, query);
                         // got a search result? cache and return it
-                        executor.execute(() -> searchResultService
-                                .mergeSearchResult(new SearchResult(audioPlayerManager, provider, query, lavaplayerResult)));
+                        cache(new SearchResult(audioPlayerManager, provider, id.getSearchTerm(), lavaplayerResult), rawId);
                         Metrics.searchHits.labels("lavaplayer-" + provider.name().toLowerCase()).inc();
                         return lavaplayerResult;
                     }
@@ -144,7 +181,7 @@ public class TrackSearcher {
                 }
             }
 
-            //3. optional: youtube api
+            //4. optional: youtube api
             if (provider == SearchProvider.YOUTUBE
                     && (appConfig.isPatronDistribution() || appConfig.isDevDistribution())) {
                 try {
@@ -152,8 +189,7 @@ public class TrackSearcher {
                     if (!youtubeApiResult.getTracks().isEmpty()) {
                         log.debug("Loaded search result {} {} from Youtube API", provider, query);
                         // got a search result? cache and return it
-                        executor.execute(() -> searchResultService
-                                .mergeSearchResult(new SearchResult(audioPlayerManager, provider, query, youtubeApiResult)));
+                        cache(new SearchResult(audioPlayerManager, provider, id.getSearchTerm(), youtubeApiResult), rawId);
                         Metrics.searchHits.labels("youtube-api").inc();
                         return youtubeApiResult;
                     }
@@ -174,16 +210,76 @@ public class TrackSearcher {
     }
 
     /**
-     * @param provider   the search provider that shall be used for this search
-     * @param searchTerm the searchTerm to search for
+     * Key under which searches are cached
+     */
+    private static String cacheKey(String query) {
+        return SearchQueryNormalizer.DEFAULT.normalize(query);
+    }
+
+    /**
+     * Key under which searches were cached before query normalization
+     */
+    private static String rawCacheKey(String query) {
+        return query.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A cache hit is owed to the query normalization if the same search, keyed like before, would have been a miss.
+     * Either way, a search keyed like before would be cached after this.
+     */
+    private void countNormalizedHit(SearchResult.SearchResultId rawId, String tier) {
+        if (rawKeysSeen.asMap().putIfAbsent(rawId, Boolean.TRUE) == null) {
+            Metrics.searchCacheNormalizedHits.labels(tier).inc();
+        }
+    }
+
+    /**
+     * Put a fresh search result into the local cache, and merge it into the remote one.
+     *
+     * @param rawId the search keyed like before query normalization
+     */
+    private void cache(SearchResult searchResult, SearchResult.SearchResultId rawId) {
+        localCache.put(searchResult.getId(), searchResult);
+        rawKeysSeen.put(rawId, Boolean.TRUE);
+        executor.execute(() -> searchResultService.mergeSearchResult(searchResult));
+    }
+
+    /**
+     * @param id          the search to look up
+     * @param cacheMaxAge age of acceptable results; a negative value accepts results of any age
+     */
+    @Nullable
+    private AudioPlaylist fromLocalCache(SearchResult.SearchResultId id, long cacheMaxAge) {
+        SearchResult searchResult = localCache.getIfPresent(id);
+        if (searchResult == null) {
+            return null;
+        }
+        if (cacheMaxAge >= 0 && searchResult.getTimestamp() + cacheMaxAge < System.currentTimeMillis()) {
+            return null;
+        }
+        try {
+            return decode(searchResult);
+        } catch (Exception e) {
+            log.warn("Could not decode locally cached search result {}", id, e);
+            localCache.invalidate(id);
+            return null;
+        }
+    }
+
+    /**
+     * @param id          the search to look up
+     * @param cacheMaxAge age of acceptable results; a negative value accepts results of any age
      */
     @Nullable
-    private AudioPlaylist fromCache(SearchProvider provider, String searchTerm, long cacheMaxAge) {
+    private AudioPlaylist fromCache(SearchResult.SearchResultId id, long cacheMaxAge) {
         try {
-            SearchResult.SearchResultId id = new SearchResult.SearchResultId(provider, searchTerm);
-            return searchResultService.getSearchResult(id, cacheMaxAge)
-                    .map(searchResult -> searchResult.getSearchResult(audioPlayerManager))
-                    .orElse(null);
+            SearchResult searchResult = searchResultService.getSearchResult(id, cacheMaxAge).orElse(null);
+            if (searchResult == null) {
+                return null;
+            }
+            AudioPlaylist playlist = decode(searchResult);
+            localCache.put(id, searchResult);
+            return playlist;
         } catch (Exception e) {
             //could be a database issue, could be a serialization issue. better to catch them all here and "orderly" return
             log.warn("Could not retrieve cached search result from database.", e);
@@ -191,6 +287,17 @@ public class TrackSearcher {
         }
     }
 
+    private AudioPlaylist decode(SearchResult searchResult) throws IOException {
+        AudioPlaylist playlist = searchResult.getSearchResult(audioPlayerManager);
+        //tracks are decoded lazily. touch the ones that will be presented to the user, so that an undecodable
+        // result is treated like a cache miss right here, instead of blowing up later
+        List<AudioTrack> tracks = playlist.getTracks();
+        for (int i = 0; i < Math.min(MAX_RESULTS, tracks.size()); i++) {
+            tracks.get(i);
+        }
+        return playlist;
+    }
+
     public static class SearchingException extends Exception {
         private static final long serialVersionUID = -1020150337258395420L;
 
@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.audio.player
+
+import fredboat.command.music.control.PlayCommandTest
+import fredboat.testutil.IntegrationTest
+import fredboat.testutil.sentinel.Raws
+import fredboat.testutil.sentinel.SentinelState
+import fredboat.testutil.sentinel.delayUntil
+import fredboat.testutil.util.cachedGuild
+import fredboat.testutil.util.queue
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+internal class VoiceIdleTrackerTest(
+        private val tracker: VoiceIdleTracker,
+        private val players: PlayerRegistry
+) : IntegrationTest() {
+
+    @AfterEach
+    fun cleanUp() {
+        players.destroyPlayer(Raws.guild.id)
+    }
+
+    @Test
+    fun followsVoiceEvents() {
+        SentinelState.joinChannel()
+        SentinelState.joinChannel(Raws.self)
+        val player = cachedGuild.queue(PlayCommandTest.url)
+        delayUntil { player.isPlaying }
+        assertFalse("Playing to a listener is not idle", tracker.isIdle(cachedGuild))
+
+        SentinelState.leaveChannel()
+        delayUntil { tracker.isIdle(cachedGuild) }
+        assertTrue("Playing to nobody is idle", tracker.isIdle(cachedGuild))
+
+        SentinelState.joinChannel()
+        delayUntil { !tracker.isIdle(cachedGuild) }
+        assertFalse("A listener came back", tracker.isIdle(cachedGuild))
+    }
+
+    @Test
+    fun followsPlayerState() {
+        SentinelState.joinChannel()
+        SentinelState.joinChannel(Raws.self)
+        val player = cachedGuild.queue(PlayCommandTest.url)
+        delayUntil { player.isPlaying }
+
+        player.setPause(true)
+        delayUntil { tracker.isIdle(cachedGuild) }
+        assertTrue("Paused with a listener is idle", tracker.isIdle(cachedGuild))
+
+        player.setPause(false)
+        delayUntil { !tracker.isIdle(cachedGuild) }
+        assertFalse("Playing again is not idle", tracker.isIdle(cachedGuild))
+    }
+}
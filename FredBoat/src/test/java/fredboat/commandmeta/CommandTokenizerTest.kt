@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.commandmeta
+
+import fredboat.testutil.BaseTest
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class CommandTokenizerTest : BaseTest() {
+
+    private val botId = "152691313123393536"
+
+    private fun tokenize(content: String, prefix: String = ";;") =
+            CommandTokenizer.tokenize(content, botId, ";;") { prefix }
+
+    @Test
+    fun defaultPrefix() {
+        val tokens = tokenize(";;play  never gonna give you up ")!!
+        Assertions.assertEquals(CommandTokenizer.TYPE_DEFAULT, tokens.prefixType)
+        Assertions.assertEquals("play", tokens.trigger)
+        Assertions.assertEquals("never gonna give you up", tokens.rawArgs)
+        Assertions.assertArrayEquals(arrayOf("never", "gonna", "give", "you", "up"), tokens.args)
+    }
+
+    @Test
+    fun customPrefix() {
+        val tokens = tokenize("!vol 50", "!")!!
+        Assertions.assertEquals(CommandTokenizer.TYPE_CUSTOM, tokens.prefixType)
+        Assertions.assertEquals("vol", tokens.trigger)
+        Assertions.assertArrayEquals(arrayOf("50"), tokens.args)
+
+        //help and prefix are always reachable through the default prefix
+        Assertions.assertEquals("help", tokenize(";;help", "!")!!.trigger)
+        Assertions.assertNull(tokenize(";;play", "!"))
+    }
+
+    @Test
+    fun mention() {
+        val tokens = tokenize("<@!$botId> play")!!
+        Assertions.assertTrue(tokens.isMention)
+        Assertions.assertEquals("play", tokens.trigger)
+        Assertions.assertEquals("", tokens.rawArgs)
+        Assertions.assertEquals(0, tokens.args.size)
+
+        Assertions.assertEquals("play", tokenize("<@$botId>play")!!.trigger)
+        Assertions.assertEquals("prefix", tokenize("<@$botId>  ")!!.trigger)
+        Assertions.assertNull(tokenize("<@1$botId> play"))
+        Assertions.assertNull(tokenize("<@12345> play"))
+    }
+
+    @Test
+    fun noCommand() {
+        Assertions.assertNull(tokenize("hello there"))
+        Assertions.assertNull(tokenize(";;"))
+        Assertions.assertNull(tokenize(";;   "))
+        Assertions.assertNull(tokenize(""))
+    }
+
+    @Test
+    fun regexMetacharactersInTrigger() {
+        val tokens = tokenize(";;pl(ay* some thing")!!
+        Assertions.assertEquals("pl(ay*", tokens.trigger)
+        Assertions.assertEquals("some thing", tokens.rawArgs)
+    }
+}
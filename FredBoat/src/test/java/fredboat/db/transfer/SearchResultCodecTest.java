@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.db.transfer;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import fredboat.config.GsonConfiguration;
+import fredboat.definitions.SearchProvider;
+import fredboat.testutil.BaseTest;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class SearchResultCodecTest extends BaseTest {
+
+    private static AudioPlayerManager playerManager;
+    private static YoutubeAudioSourceManager youtube;
+
+    @BeforeAll
+    static void setUp() {
+        playerManager = new DefaultAudioPlayerManager();
+        youtube = new YoutubeAudioSourceManager();
+        playerManager.registerSourceManager(youtube);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        playerManager.shutdown();
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        AudioPlaylist playlist = searchResult(20);
+        AudioPlaylist decoded = SearchResultCodec.decode(playerManager, SearchResultCodec.encode(playerManager, playlist));
+
+        Assertions.assertEquals(playlist.getName(), decoded.getName());
+        Assertions.assertTrue(decoded.isSearchResult());
+        Assertions.assertNull(decoded.getSelectedTrack());
+        Assertions.assertEquals(playlist.getTracks().size(), decoded.getTracks().size());
+        for (int i = 0; i < playlist.getTracks().size(); i++) {
+            AudioTrackInfo expected = playlist.getTracks().get(i).getInfo();
+            AudioTrackInfo actual = decoded.getTracks().get(i).getInfo();
+            Assertions.assertEquals(expected.identifier, actual.identifier);
+            Assertions.assertEquals(expected.title, actual.title);
+            Assertions.assertEquals(expected.length, actual.length);
+        }
+    }
+
+    /**
+     * Search results cached by older versions arrive from the backend as java serialized playlists.
+     */
+    @Test
+    void readsLegacyFormat() throws IOException {
+        AudioPlaylist playlist = searchResult(5);
+        byte[] legacy = SerializationUtils.serialize(new SearchResult.SerializableAudioPlaylist(playerManager, playlist));
+        Assertions.assertFalse(SearchResultCodec.isCompact(legacy));
+
+        //build the transfer object the way the backend hands it to us, with the legacy payload in place
+        Gson gson = new GsonConfiguration().gson();
+        JsonObject json = gson.toJsonTree(new SearchResult(playerManager, SearchProvider.YOUTUBE,
+                "never gonna give you up", playlist)).getAsJsonObject();
+        json.add("serializedSearchResult", gson.toJsonTree(legacy));
+        SearchResult searchResult = gson.fromJson(json, SearchResult.class);
+        Assertions.assertEquals(legacy.length, searchResult.getSerializedSize());
+
+        AudioPlaylist decoded = searchResult.getSearchResult(playerManager);
+        Assertions.assertEquals(playlist.getName(), decoded.getName());
+        Assertions.assertTrue(decoded.isSearchResult());
+        Assertions.assertEquals(playlist.getTracks().size(), decoded.getTracks().size());
+        for (int i = 0; i < playlist.getTracks().size(); i++) {
+            AudioTrackInfo expected = playlist.getTracks().get(i).getInfo();
+            AudioTrackInfo actual = decoded.getTracks().get(i).getInfo();
+            Assertions.assertEquals(expected.identifier, actual.identifier);
+            Assertions.assertEquals(expected.title, actual.title);
+            Assertions.assertEquals(expected.length, actual.length);
+        }
+    }
+
+    @Test
+    void smallerThanLegacyFormat() {
+        AudioPlaylist playlist = searchResult(20);
+        byte[] legacy = SerializationUtils.serialize(new SearchResult.SerializableAudioPlaylist(playerManager, playlist));
+        byte[] compact = SearchResultCodec.encode(playerManager, playlist);
+        Assertions.assertTrue(compact.length < legacy.length,
+                () -> "compact " + compact.length + " bytes vs legacy " + legacy.length + " bytes");
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        byte[] encoded = SearchResultCodec.encode(playerManager, searchResult(5));
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        Assertions.assertThrows(IOException.class, () -> SearchResultCodec.decode(playerManager, truncated));
+    }
+
+    private static AudioPlaylist searchResult(int size) {
+        List<AudioTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String identifier = String.format("dQw4w9WgX%02d", i);
+            tracks.add(new YoutubeAudioTrack(new AudioTrackInfo("Rick Astley - Never Gonna Give You Up " + i,
+                    "RickAstleyVEVO", 213000 + i, identifier, false,
+                    "https://www.youtube.com/watch?v=" + identifier), youtube));
+        }
+        return new BasicAudioPlaylist("Search result for: never gonna give you up", tracks, null, true);
+    }
+}
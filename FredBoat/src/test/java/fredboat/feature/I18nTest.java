@@ -28,6 +28,9 @@ import fredboat.testutil.BaseTest;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
 import java.util.ResourceBundle;
 
 public class I18nTest extends BaseTest {
@@ -41,4 +44,58 @@ public class I18nTest extends BaseTest {
             Assertions.assertNotNull(id_ID.getString(key), () -> key + " prop missing in language files");
         }
     }
+
+    @Test
+    public void testTemplatesFormatLikeMessageFormat() {
+        I18n.start();
+
+        Object[] params = {"first", 1234, null};
+        for (I18n.FredBoatLocale locale : I18n.LANGS.values()) {
+            for (String key : locale.getProps().keySet()) {
+                MessageTemplate template = locale.getTemplate(key);
+                if (template == null) continue; //malformed, formatting falls back to the default language
+
+                String pattern = locale.getProps().getString(key);
+                Assertions.assertEquals(MessageFormat.format(pattern, params), template.format(params),
+                        () -> key + " in " + locale.getCode() + " formats differently than with MessageFormat");
+            }
+        }
+    }
+
+    /**
+     * Keys formatted by audio loading, the guild player and the player limiter, whose translations were written with
+     * plain placeholder replacement in mind. An unescaped apostrophe would start a quoted section and swallow text.
+     */
+    private static final List<String> PLAYER_KEYS = Arrays.asList(
+            "loadAnnouncePlaylist", "loadErrorCommon", "loadErrorSusp", "loadListSuccess", "loadNoMatches",
+            "loadPlaylistTooMany", "loadQueueTrackLimit", "loadSingleTrack", "loadSingleTrackAndPlay",
+            "loadSingleTrackFirst", "npLoadedBandcamp", "npLoadedDefault", "npLoadedFromHTTP", "npLoadedSoundcloud",
+            "playerLeftChannel", "playersLimited", "trackAnnounce");
+
+    @Test
+    public void testPlayerMessagesSubstitutePlaceholders() {
+        I18n.start();
+
+        Object[] params = {"ARG0", "ARG1"};
+        for (I18n.FredBoatLocale locale : I18n.LANGS.values()) {
+            for (String key : PLAYER_KEYS) {
+                if (locale.getTemplate(key) == null) continue; //missing or malformed, the default language is used
+
+                String expected = locale.getProps().getString(key).replace("''", "'");
+                for (int i = 0; i < params.length; i++) {
+                    expected = expected.replace("{" + i + "}", params[i].toString());
+                }
+                Assertions.assertEquals(expected, locale.format(key, params),
+                        () -> key + " in " + locale.getCode() + " has an unescaped apostrophe or a broken placeholder");
+            }
+        }
+    }
+
+    @Test
+    public void testTemplateQuotingAndMissingArguments() {
+        Assertions.assertEquals("Can't skip {0}", MessageTemplate.compile("Can''t skip '{0}'").format("x"));
+        Assertions.assertEquals("a b {2}", MessageTemplate.compile("{0} {1} {2}").format("a", "b"));
+        Assertions.assertEquals("1,234", MessageTemplate.compile("{0,number}").format(1234));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MessageTemplate.compile("{0"));
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.sentinel
+
+import fredboat.testutil.BaseTest
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class GuildEvictionIndexTest : BaseTest() {
+
+    private fun index() = GuildEvictionIndex(startMillis = 0)
+
+    @Test
+    fun touchPostponesIdleCheck() {
+        val index = index()
+        index.track(1, 10, 600_000)
+        index.track(2, 10, 600_000)
+        Assertions.assertTrue(index.touch(1, 15, 660_000))
+
+        Assertions.assertEquals(listOf(2L), index.pollIdle(600_000).toList())
+        Assertions.assertTrue(index.pollIdle(650_000).isEmpty())
+        Assertions.assertEquals(listOf(1L), index.pollIdle(660_000).toList())
+        Assertions.assertEquals(25L, index.entityCount)
+    }
+
+    @Test
+    fun touchIgnoresUntrackedGuilds() {
+        val index = index()
+        index.track(1, 10, 600_000)
+        index.remove(1)
+
+        Assertions.assertFalse(index.touch(1, 10, 660_000))
+        Assertions.assertFalse(1L in index)
+        Assertions.assertEquals(0L, index.entityCount)
+        Assertions.assertTrue(index.pollIdle(700_000).isEmpty())
+    }
+
+    @Test
+    fun pollIdleReturnsGuildsOnceUntilRescheduled() {
+        val index = index()
+        index.track(1, 10, 600_000)
+
+        Assertions.assertEquals(listOf(1L), index.pollIdle(600_000).toList())
+        Assertions.assertTrue(index.pollIdle(700_000).isEmpty())
+        Assertions.assertTrue(1L in index) // still cached until invalidated
+
+        index.scheduleIdleCheck(1, 800_000)
+        Assertions.assertEquals(listOf(1L), index.pollIdle(800_000).toList())
+
+        index.remove(1)
+        index.scheduleIdleCheck(1, 900_000) // ignored for removed guilds
+        Assertions.assertTrue(index.pollIdle(900_000).isEmpty())
+    }
+
+    @Test
+    fun removesLeastRecentlyUsedOverBudget() {
+        val index = index()
+        for (id in 1L..5L) index.track(id, 10, 600_000)
+        index.touch(1, 10, 600_000)
+
+        Assertions.assertTrue(index.isOverBudget(maxGuilds = 3, maxEntities = 0))
+        Assertions.assertEquals(listOf(2L, 3L), index.removeOverBudget(3, 0) { true }.toList())
+        Assertions.assertFalse(index.isOverBudget(maxGuilds = 3, maxEntities = 0))
+        Assertions.assertEquals(3, index.size)
+        Assertions.assertEquals(30L, index.entityCount)
+        Assertions.assertTrue(index.removeOverBudget(3, 0) { true }.isEmpty())
+
+        // Removed guilds are no longer due for idle checks either
+        Assertions.assertEquals(setOf(1L, 4L, 5L), index.pollIdle(600_000).toSet())
+    }
+
+    @Test
+    fun skipsGuildsInUse() {
+        val index = index()
+        index.track(1, 100, 600_000)
+        index.track(2, 10, 600_000)
+        index.track(3, 10, 600_000)
+
+        val removed = index.removeOverBudget(0, 50) { it != 1L }
+        Assertions.assertEquals(listOf(2L, 3L), removed.toList())
+        Assertions.assertTrue(index.isOverBudget(maxGuilds = 0, maxEntities = 50))
+        Assertions.assertTrue(1L in index)
+    }
+
+    @Test
+    fun concurrentEvictionsNeverShareVictims() {
+        val index = index()
+        for (id in 1L..10_000L) index.track(id, 1, 600_000)
+
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val tasks = List(4) { Callable { index.removeOverBudget(100, 0) { true }.toList() } }
+            val removed = executor.invokeAll(tasks).flatMap { it.get() }
+
+            Assertions.assertEquals(9_900, removed.size)
+            Assertions.assertEquals(9_900, removed.toSet().size)
+            Assertions.assertEquals(100, index.size)
+            Assertions.assertEquals(100L, index.entityCount)
+        } finally {
+            executor.shutdown()
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package fredboat.sentinel
+
+import fredboat.testutil.IntegrationTest
+import fredboat.testutil.load.LoadGenerator
+import fredboat.testutil.load.LoadProfile
+import org.junit.Assert.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.amqp.rabbit.core.RabbitTemplate
+import java.io.File
+
+/**
+ * Capacity measurement rather than a test, so it only runs when asked for:
+ * ./gradlew :FredBoat:test --tests '*SentinelLoadTest' -Dfredboat.loadtest=true -Dfredboat.loadtest.guilds=5000
+ * See [LoadProfile] for the other knobs. The report is written to build/reports/load/results.json
+ */
+@EnabledIfSystemProperty(named = "fredboat.loadtest", matches = "true")
+class SentinelLoadTest : IntegrationTest() {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(SentinelLoadTest::class.java)
+    }
+
+    @Test
+    fun load(rabbit: RabbitTemplate) {
+        val profile = LoadProfile.fromSystemProperties()
+        log.info("Running load with {}", profile)
+        val report = LoadGenerator(rabbit, profile).run()
+        log.info("Load report: {}", report)
+        report.writeTo(File("build/reports/load/results.json"))
+
+        assertTrue("No command was answered", report.repliesReceived > 0)
+    }
+}
@@ -0,0 +1,232 @@
+package fredboat.testutil.load
+
+import com.fredboat.sentinel.SentinelExchanges
+import com.fredboat.sentinel.entities.GuildLeaveEvent
+import com.fredboat.sentinel.entities.MessageReceivedEvent
+import com.fredboat.sentinel.entities.SendMessageRequest
+import com.fredboat.sentinel.entities.VoiceJoinEvent
+import com.fredboat.sentinel.entities.VoiceLeaveEvent
+import fredboat.sentinel.RawGuild
+import fredboat.sentinel.RawMember
+import fredboat.sentinel.RawTextChannel
+import fredboat.sentinel.RawVoiceChannel
+import fredboat.testutil.sentinel.Raws
+import fredboat.testutil.sentinel.SentinelState
+import fredboat.testutil.sentinel.delayUntil
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.amqp.rabbit.core.RabbitTemplate
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Replays a mix of Sentinel events across many synthetic guilds against the running application, with the mock
+ * Sentinel answering its requests. Commands are answered by a reply that carries their sequence number, which is
+ * how reply latencies are measured.
+ */
+class LoadGenerator(private val rabbit: RabbitTemplate, private val profile: LoadProfile) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(LoadGenerator::class.java)
+
+        private const val GUILD_ID_BASE = 400000000000000000L
+        // Leaves room for the channels and members of each guild
+        private const val GUILD_ID_STEP = 1000L
+        private const val TICK_MILLIS = 10L
+        private const val MARKER = "loadgen"
+        private val MARKER_REGEX = Regex("$MARKER(\\d+)")
+        private const val PERMISSIONS = 0x7fffffffL
+
+        // the command used for measuring, it replies exactly once with its arguments
+        private const val COMMAND = ";;say $MARKER"
+        private val CHATTER = listOf(
+                "is anyone up for a game tonight?",
+                "lol",
+                "did you see the new episode",
+                "brb"
+        )
+    }
+
+    private val guilds = (0 until profile.guilds).map { syntheticGuild(GUILD_ID_BASE + it * GUILD_ID_STEP) }
+    private val kinds = profile.mix.filterValues { it > 0 }.keys.toList()
+    private val weights = kinds.map { profile.mix.getValue(it) }.runningTotal()
+
+    private val sequence = AtomicLong()
+    @Volatile
+    private var measuredFrom = Long.MAX_VALUE
+    private val pending = ConcurrentHashMap<Long, Long>() // sequence -> nanos when sent
+    private val latencies = ArrayList<Long>()
+    private val unmatchedReplies = AtomicLong()
+    private val eventsSent = ConcurrentHashMap<String, AtomicLong>()
+    private val inVoice = ConcurrentHashMap.newKeySet<Long>()
+
+    fun run(): LoadReport {
+        guilds.forEach { SentinelState.syntheticGuilds[it.id] = it }
+        SentinelState.recordRequests = false
+        SentinelState.messageListener = this::onReply
+
+        val scheduler = Executors.newSingleThreadScheduledExecutor { Thread(it, "load-generator") }
+        var carry = 0.0
+        val perTick = profile.eventsPerSecond * TICK_MILLIS / 1000.0
+        scheduler.scheduleAtFixedRate({
+            carry += perTick
+            while (carry >= 1) {
+                carry--
+                try {
+                    sendEvent()
+                } catch (e: Exception) {
+                    log.error("Failed to send event", e)
+                }
+            }
+        }, 0, TICK_MILLIS, TimeUnit.MILLISECONDS)
+
+        try {
+            log.info("Warming up for {}s with {} guilds", profile.warmupSeconds, profile.guilds)
+            Thread.sleep(TimeUnit.SECONDS.toMillis(profile.warmupSeconds.toLong()))
+
+            val heapBefore = usedHeapAfterGc()
+            val start = System.nanoTime()
+            measuredFrom = sequence.get()
+            log.info("Measuring for {}s", profile.durationSeconds)
+            Thread.sleep(TimeUnit.SECONDS.toMillis(profile.durationSeconds.toLong()))
+            val commandsSent = sequence.get() - measuredFrom
+            val elapsedNanos = System.nanoTime() - start
+
+            scheduler.shutdown()
+            scheduler.awaitTermination(5, TimeUnit.SECONDS)
+            delayUntil(timeout = 10000) { pending.keys.none { it >= measuredFrom } }
+            val heapAfter = usedHeapAfterGc()
+
+            return report(commandsSent, elapsedNanos, heapBefore, heapAfter)
+        } finally {
+            scheduler.shutdownNow()
+            SentinelState.messageListener = null
+            SentinelState.recordRequests = true
+            guilds.forEach { SentinelState.syntheticGuilds.remove(it.id) }
+        }
+    }
+
+    private fun sendEvent() {
+        val random = ThreadLocalRandom.current()
+        val pick = random.nextInt(weights.last())
+        val kind = kinds[weights.indexOfFirst { pick < it }]
+        val guild = guilds[random.nextInt(guilds.size)]
+        // skip the self member, which is the first one
+        val member = guild.members[1 + random.nextInt(guild.members.size - 1)]
+
+        val event: Any = when (kind) {
+            LoadProfile.COMMAND -> {
+                val seq = sequence.getAndIncrement()
+                pending[seq] = System.nanoTime()
+                message(guild, member, COMMAND + seq)
+            }
+            LoadProfile.CHATTER -> message(guild, member, CHATTER[random.nextInt(CHATTER.size)])
+            LoadProfile.VOICE -> {
+                val channel = guild.voiceChannels[0].id
+                if (inVoice.add(member.id)) {
+                    VoiceJoinEvent(guild = guild.id, channel = channel, member = member.id)
+                } else {
+                    inVoice.remove(member.id)
+                    VoiceLeaveEvent(guild = guild.id, channel = channel, member = member.id)
+                }
+            }
+            LoadProfile.GUILD -> {
+                guild.members.forEach { inVoice.remove(it.id) }
+                GuildLeaveEvent(guild = guild.id, joinTime = System.currentTimeMillis() - 3600000)
+            }
+            else -> throw IllegalStateException("Unknown event kind $kind")
+        }
+        rabbit.convertAndSend(SentinelExchanges.EVENTS, event)
+        eventsSent.computeIfAbsent(kind) { AtomicLong() }.incrementAndGet()
+    }
+
+    private fun message(guild: RawGuild, member: RawMember, content: String): MessageReceivedEvent {
+        val channel = guild.textChannels[0]
+        return MessageReceivedEvent(
+                ThreadLocalRandom.current().nextLong(Long.MAX_VALUE),
+                guild.id,
+                channel.id,
+                channel.ourEffectivePermissions,
+                content,
+                member.id,
+                false,
+                emptyList()
+        )
+    }
+
+    private fun onReply(request: SendMessageRequest) {
+        val now = System.nanoTime()
+        val seq = MARKER_REGEX.find(request.message)?.groupValues?.get(1)?.toLongOrNull()
+        val sentAt = if (seq == null) null else pending.remove(seq)
+        if (seq == null || sentAt == null) {
+            unmatchedReplies.incrementAndGet()
+            return
+        }
+        if (seq < measuredFrom) return
+        synchronized(latencies) { latencies.add(now - sentAt) }
+    }
+
+    private fun report(commandsSent: Long, elapsedNanos: Long, heapBefore: Long, heapAfter: Long): LoadReport {
+        val sorted = synchronized(latencies) { latencies.sorted() }
+        fun percentileMillis(p: Double): Double {
+            if (sorted.isEmpty()) return Double.NaN
+            val index = Math.min(sorted.size - 1, Math.ceil(p * sorted.size).toInt() - 1).coerceAtLeast(0)
+            return sorted[index] / 1_000_000.0
+        }
+
+        return LoadReport(
+                profile = profile,
+                eventsSent = eventsSent.mapValues { it.value.get() },
+                commandsSent = commandsSent,
+                repliesReceived = sorted.size.toLong(),
+                unansweredCommands = pending.keys.count { it >= measuredFrom }.toLong(),
+                unmatchedReplies = unmatchedReplies.get(),
+                commandsPerSecond = sorted.size / (elapsedNanos / 1_000_000_000.0),
+                p50Millis = percentileMillis(0.50),
+                p99Millis = percentileMillis(0.99),
+                maxMillis = if (sorted.isEmpty()) Double.NaN else sorted.last() / 1_000_000.0,
+                heapBeforeBytes = heapBefore,
+                heapAfterBytes = heapAfter
+        )
+    }
+
+    private fun usedHeapAfterGc(): Long {
+        System.gc()
+        return ManagementFactory.getMemoryMXBean().heapMemoryUsage.used
+    }
+
+    private fun syntheticGuild(id: Long): RawGuild {
+        val members = mutableListOf(Raws.self.copy(guildId = id, roles = emptyList(), voiceChannel = null))
+        for (i in 1..profile.membersPerGuild) {
+            members.add(RawMember(
+                    id + 100 + i,
+                    "Member $i",
+                    "Member $i",
+                    String.format("%04d", i),
+                    id,
+                    false,
+                    mutableListOf(),
+                    null
+            ))
+        }
+        return RawGuild(
+                id,
+                "Synthetic guild $id",
+                members[1].id,
+                members,
+                mutableListOf(RawTextChannel(id + 1, "general", PERMISSIONS)),
+                mutableListOf(RawVoiceChannel(id + 2, "Music", mutableListOf(), 0, PERMISSIONS)),
+                mutableListOf(),
+                voiceServerUpdate = null
+        )
+    }
+
+    private fun List<Int>.runningTotal(): List<Int> {
+        var total = 0
+        return map { total += it; total }
+    }
+}
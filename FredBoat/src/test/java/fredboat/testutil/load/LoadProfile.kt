@@ -0,0 +1,52 @@
+package fredboat.testutil.load
+
+/**
+ * What the [LoadGenerator] sends, and for how long.
+ *
+ * The mix weights the kinds of events against each other:
+ *  - command: a command that is answered with exactly one reply, which is what latencies are measured on
+ *  - chatter: a message that is not a command
+ *  - voice: a member joining or leaving the voice channel
+ *  - guild: us leaving a guild, which drops it from the cache so the next event for it subscribes again
+ */
+data class LoadProfile(
+        val guilds: Int = 2000,
+        val membersPerGuild: Int = 20,
+        val eventsPerSecond: Int = 500,
+        val warmupSeconds: Int = 10,
+        val durationSeconds: Int = 60,
+        val mix: Map<String, Int> = mapOf(COMMAND to 50, CHATTER to 35, VOICE to 10, GUILD to 5)
+) {
+    companion object {
+        const val COMMAND = "command"
+        const val CHATTER = "chatter"
+        const val VOICE = "voice"
+        const val GUILD = "guild"
+
+        private const val PREFIX = "fredboat.loadtest."
+
+        /**
+         * Reads the profile from system properties like -Dfredboat.loadtest.guilds=5000, falling back to the defaults.
+         * The mix is given as -Dfredboat.loadtest.mix=command=50,chatter=35,voice=10,guild=5
+         */
+        fun fromSystemProperties(): LoadProfile {
+            val defaults = LoadProfile()
+            fun int(name: String, default: Int) = System.getProperty(PREFIX + name)?.toInt() ?: default
+
+            val mix = System.getProperty(PREFIX + "mix")?.split(",")
+                    ?.map { it.split("=") }
+                    ?.associate { it[0].trim() to it[1].trim().toInt() }
+                    ?: defaults.mix
+            mix.keys.forEach { require(it in listOf(COMMAND, CHATTER, VOICE, GUILD)) { "Unknown event kind $it" } }
+
+            return LoadProfile(
+                    guilds = int("guilds", defaults.guilds),
+                    membersPerGuild = int("membersPerGuild", defaults.membersPerGuild),
+                    eventsPerSecond = int("eventsPerSecond", defaults.eventsPerSecond),
+                    warmupSeconds = int("warmupSeconds", defaults.warmupSeconds),
+                    durationSeconds = int("durationSeconds", defaults.durationSeconds),
+                    mix = mix
+            )
+        }
+    }
+}
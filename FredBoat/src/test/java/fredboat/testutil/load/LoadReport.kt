@@ -0,0 +1,39 @@
+package fredboat.testutil.load
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import java.io.File
+
+/**
+ * Outcome of a [LoadGenerator] run. Everything except [eventsSent] only covers the measured period after the warmup.
+ */
+data class LoadReport(
+        val profile: LoadProfile,
+        val eventsSent: Map<String, Long>,
+        val commandsSent: Long,
+        val repliesReceived: Long,
+        /** Commands that did not get a reply in time, for example because they were ratelimited or shed */
+        val unansweredCommands: Long,
+        /** Replies that could not be matched to a command, like busy notices */
+        val unmatchedReplies: Long,
+        val commandsPerSecond: Double,
+        val p50Millis: Double,
+        val p99Millis: Double,
+        val maxMillis: Double,
+        val heapBeforeBytes: Long,
+        val heapAfterBytes: Long
+) {
+    val heapGrowthBytes: Long
+        get() = heapAfterBytes - heapBeforeBytes
+
+    fun writeTo(file: File) {
+        file.parentFile?.mkdirs()
+        ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, this)
+    }
+
+    override fun toString(): String {
+        return String.format("%d/%d commands answered, %.1f commands/s, reply latency p50 %.1fms p99 %.1fms max %.1fms, "
+                + "%d unanswered, %d unmatched replies, heap growth %dkB, events sent %s",
+                repliesReceived, commandsSent, commandsPerSecond, p50Millis, p99Millis, maxMillis,
+                unansweredCommands, unmatchedReplies, heapGrowthBytes / 1024, eventsSent)
+    }
+}
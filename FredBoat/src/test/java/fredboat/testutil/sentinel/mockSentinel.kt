@@ -14,6 +14,7 @@ import org.springframework.amqp.rabbit.annotation.RabbitListener
 import org.springframework.amqp.rabbit.core.RabbitTemplate
 import org.springframework.stereotype.Service
 import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.TimeUnit
 
@@ -27,6 +28,13 @@ object SentinelState {
     @Volatile
     var banList = Raws.banList
     val outgoing = mutableMapOf<Class<*>, LinkedBlockingQueue<Any>>()
+    /** Guilds answered by their id instead of [guild], see [fredboat.testutil.load.LoadGenerator] */
+    val syntheticGuilds = ConcurrentHashMap<Long, RawGuild>()
+    /** Whether requests are kept in [outgoing]. Under load nobody polls them, so they would only pile up */
+    @Volatile
+    var recordRequests = true
+    @Volatile
+    var messageListener: ((SendMessageRequest) -> Unit)? = null
     private val log: Logger = LoggerFactory.getLogger(SentinelState::class.java)
 
     fun reset() {
@@ -36,7 +44,10 @@ object SentinelState {
         guild = Raws.guild.copy()
         banList = Raws.banList
         outgoing.clear()
-        guildCache.cache.remove(guild.id)
+        syntheticGuilds.clear()
+        recordRequests = true
+        messageListener = null
+        guildCache.remove(guild.id)
         //rabbit.convertAndSend(SentinelExchanges.EVENTS, GuildUpdateEvent(DefaultSentinelRaws.guild))
     }
 
@@ -79,6 +90,25 @@ object SentinelState {
         log.info("${member.name} joined ${channel.name}")
     }
 
+    fun leaveChannel(
+            member: RawMember = Raws.owner,
+            channel: RawVoiceChannel = Raws.musicChannel
+    ) {
+        val old = guild.voiceChannels.find { it.id == channel.id } ?: channel
+        val newList = guild.voiceChannels.filter { it.id != channel.id } +
+                old.copy(members = old.members.filter { it != member.id })
+        guild = guild.copy(voiceChannels = newList)
+        guild = setMember(guild, member.copy(voiceChannel = null))
+        rabbit.convertAndSend(SentinelExchanges.EVENTS, VoiceLeaveEvent(
+                Raws.guild.id,
+                channel.id,
+                member.id))
+
+        log.info("Emulating ${member.id} leaving ${channel.id}")
+        delayUntil(timeout = 4000) { guildCache.getIfCached(guild.id)?.getMember(member.id)?.voiceChannel == null }
+        log.info("${member.name} left ${channel.name}")
+    }
+
     fun setRoles(guild: RawGuild = SentinelState.guild, member: RawMember, roles: List<Long>) {
         SentinelState.guild = setMember(guild, member.copy(roles = roles))
     }
@@ -108,6 +138,7 @@ class MockSentinelRequestHandler(template: RabbitTemplate, cache: GuildCache) {
     @RabbitHandler
     fun subscribe(request: GuildSubscribeRequest): RawGuild {
         default(request)
+        SentinelState.syntheticGuilds[request.id]?.let { return it }
         log.info("Got subscription request")
         return SentinelState.guild
     }
@@ -115,7 +146,12 @@ class MockSentinelRequestHandler(template: RabbitTemplate, cache: GuildCache) {
     @RabbitHandler
     fun sendMessage(request: SendMessageRequest): SendMessageResponse {
         default(request)
-        log.info("FredBoat says: ${request.message}")
+        val listener = SentinelState.messageListener
+        if (listener != null) {
+            listener(request)
+        } else {
+            log.info("FredBoat says: ${request.message}")
+        }
         return SendMessageResponse(Math.random().toLong())
     }
 
@@ -180,6 +216,7 @@ class MockSentinelRequestHandler(template: RabbitTemplate, cache: GuildCache) {
 
     @RabbitHandler(isDefault = true)
     fun default(request: Any) {
+        if (!SentinelState.recordRequests) return
         val queue = outgoing.getOrPut(request.javaClass) { LinkedBlockingQueue() }
         queue.put(request)
     }
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util
+
+import fredboat.testutil.BaseTest
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class HyperLogLogTest : BaseTest() {
+
+    @Test
+    fun smallCardinalitiesAreNearlyExact() {
+        val hll = HyperLogLog()
+        for (i in 1L..1000L) hll.add(i)
+        Assertions.assertEquals(1000.0, hll.cardinality().toDouble(), 10.0)
+    }
+
+    @Test
+    fun largeCardinalitiesAreWithinTheErrorBound() {
+        val hll = HyperLogLog()
+        // Discord-like ids, which mostly differ in their lower bits
+        val base = 81011298891993088L
+        val count = 1_000_000
+        for (i in 0 until count) hll.add(base + i.toLong() * 4194304 + i % 7)
+
+        val error = Math.abs(hll.cardinality() - count) / count.toDouble()
+        Assertions.assertTrue(error < 4 * hll.relativeStandardError, "Relative error $error is too large")
+    }
+
+    @Test
+    fun duplicatesAreNotCounted() {
+        val hll = HyperLogLog()
+        repeat(5) {
+            for (i in 1L..50_000L) hll.add(i)
+        }
+        val error = Math.abs(hll.cardinality() - 50_000) / 50_000.0
+        Assertions.assertTrue(error < 4 * hll.relativeStandardError, "Relative error $error is too large")
+    }
+
+    @Test
+    fun mergingEqualsCountingTogether() {
+        val a = HyperLogLog()
+        val b = HyperLogLog()
+        val both = HyperLogLog()
+        for (i in 1L..30_000L) {
+            if (i % 2 == 0L) a.add(i) else b.add(i)
+            both.add(i)
+        }
+        for (i in 1L..10_000L) b.add(i) // overlaps with a
+
+        a.merge(b)
+        Assertions.assertEquals(both.cardinality(), a.cardinality())
+    }
+
+    @Test
+    fun reportsErrorAndMemory() {
+        val hll = HyperLogLog(precision = 14)
+        Assertions.assertEquals(16384, hll.memoryBytes)
+        Assertions.assertEquals(0.0081, hll.relativeStandardError, 0.0001)
+    }
+}
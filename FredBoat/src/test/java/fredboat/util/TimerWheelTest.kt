@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util
+
+import fredboat.testutil.BaseTest
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class TimerWheelTest : BaseTest() {
+
+    private fun wheel() = TimerWheel(tickMillis = 1000, wheelSize = 8, startMillis = 0)
+
+    @Test
+    fun expiresAtDeadline() {
+        val wheel = wheel()
+        wheel.schedule(1, 2500)
+        wheel.schedule(2, 4000)
+
+        Assertions.assertTrue(wheel.advance(2000).isEmpty())
+        Assertions.assertEquals(listOf(1L), wheel.advance(3000).toList())
+        Assertions.assertTrue(wheel.advance(3999).isEmpty())
+        Assertions.assertEquals(listOf(2L), wheel.advance(4000).toList())
+        Assertions.assertEquals(0, wheel.size)
+    }
+
+    @Test
+    fun keepsDeadlinesOfLaterRevolutions() {
+        val wheel = wheel()
+        wheel.schedule(1, 3000)
+        wheel.schedule(2, 3000 + 8 * 1000) // same slot, one revolution later
+
+        Assertions.assertEquals(listOf(1L), wheel.advance(3000).toList())
+        Assertions.assertTrue(2L in wheel)
+        Assertions.assertTrue(wheel.advance(10000).isEmpty())
+        Assertions.assertEquals(listOf(2L), wheel.advance(11000).toList())
+    }
+
+    @Test
+    fun expiresEverythingDueAfterALongPause() {
+        val wheel = wheel()
+        for (i in 1L..20L) wheel.schedule(i, i * 1000)
+
+        Assertions.assertEquals((1L..20L).toSet(), wheel.advance(100000).toSet())
+        Assertions.assertEquals(0, wheel.size)
+    }
+
+    @Test
+    fun reschedulingAndCancelling() {
+        val wheel = wheel()
+        wheel.schedule(1, 2000)
+        wheel.schedule(1, 6000)
+        wheel.schedule(2, 2000)
+        Assertions.assertEquals(6000L, wheel.deadline(1))
+        Assertions.assertTrue(wheel.cancel(2))
+        Assertions.assertFalse(wheel.cancel(2))
+        Assertions.assertNull(wheel.deadline(2))
+
+        Assertions.assertTrue(wheel.advance(5000).isEmpty())
+        Assertions.assertEquals(listOf(1L), wheel.advance(6000).toList())
+    }
+
+    @Test
+    fun pastDeadlinesExpireOnTheNextTick() {
+        val wheel = wheel()
+        wheel.advance(5000)
+        wheel.schedule(1, 1000)
+        Assertions.assertTrue(wheel.advance(5500).isEmpty())
+        Assertions.assertEquals(listOf(1L), wheel.advance(6000).toList())
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util
+
+import fredboat.testutil.BaseTest
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class TrigramIndexTest : BaseTest() {
+
+    private fun TrigramIndex.ids(term: String) = candidates(term)!!.toSortedSet()
+
+    @Test
+    fun candidatesContainAllSubstringMatches() {
+        val index = TrigramIndex()
+        index.put(1, "Napster#0001", "napster")
+        index.put(2, "Fre_d#0002", "Fred")
+        index.put(3, "Shredder#0003", "FredBoat fan")
+
+        Assertions.assertEquals(sortedSetOf(2L, 3L), index.ids("FRED"))
+        Assertions.assertEquals(sortedSetOf(1L), index.ids("ster#"))
+        Assertions.assertEquals(sortedSetOf<Long>(), index.ids("nothing"))
+        Assertions.assertNull(index.candidates("fr"), "terms shorter than a trigram can't be looked up")
+    }
+
+    @Test
+    fun putReplacesAndRemoveForgets() {
+        val index = TrigramIndex()
+        index.put(1, "Napster#0001", "napster")
+        index.put(1, "Nap#0001", "Nappy")
+        Assertions.assertEquals(sortedSetOf<Long>(), index.ids("ster"))
+        Assertions.assertEquals(sortedSetOf(1L), index.ids("appy"))
+
+        index.remove(1)
+        Assertions.assertEquals(sortedSetOf<Long>(), index.ids("appy"))
+        Assertions.assertEquals(0, index.size)
+    }
+}
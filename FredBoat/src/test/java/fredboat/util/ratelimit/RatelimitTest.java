@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util.ratelimit;
+
+import fredboat.testutil.BaseTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class RatelimitTest extends BaseTest {
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private static Ratelimit ratelimit(long maxRequests, long milliseconds) {
+        return new Ratelimit("test", executor, Collections.emptySet(), Ratelimit.Scope.USER,
+                maxRequests, milliseconds, Object.class, context -> "");
+    }
+
+    @Test
+    public void allowsBurstOfMaxRequests() {
+        Ratelimit ratelimit = ratelimit(5, 60000);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(ratelimit.tryAcquire(1, 1), "request " + i + " of the burst should be allowed");
+        }
+        Assertions.assertFalse(ratelimit.tryAcquire(1, 1));
+        Assertions.assertTrue(ratelimit.tryAcquire(2, 1), "other ids are not affected");
+    }
+
+    @Test
+    public void weightedRequestsMayOverstepOnce() {
+        Ratelimit ratelimit = ratelimit(5, 60000);
+        Assertions.assertTrue(ratelimit.tryAcquire(1, 4));
+        Assertions.assertTrue(ratelimit.tryAcquire(1, 10), "one cell is left, so a heavy request still gets through");
+        Assertions.assertFalse(ratelimit.tryAcquire(1, 1));
+    }
+
+    @Test
+    public void liftLimitResets() {
+        Ratelimit ratelimit = ratelimit(1, 60000);
+        Assertions.assertTrue(ratelimit.tryAcquire(1, 1));
+        Assertions.assertFalse(ratelimit.tryAcquire(1, 1));
+        ratelimit.liftLimit(1);
+        Assertions.assertTrue(ratelimit.tryAcquire(1, 1));
+    }
+}
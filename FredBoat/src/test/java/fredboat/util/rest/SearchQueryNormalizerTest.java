@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util.rest;
+
+import fredboat.testutil.BaseTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+class SearchQueryNormalizerTest extends BaseTest {
+
+    @TestFactory
+    Stream<DynamicTest> sameKeyForTrivialVariations() {
+        String[] testCases = {
+                "Never Gonna Give You Up",
+                "never gonna give you up ",
+                "  NEVER   gonna\tgive you up",
+                "Never gonna give you up!!",
+                "never, gonna, give you up...",
+                "«Never Gonna Give You Up»",
+                "ｎｅｖｅｒ gonna give you up", //fullwidth
+        };
+
+        return DynamicTest.stream(Arrays.asList(testCases).iterator(),
+                testCase -> String.format("normalizing `%s`", testCase),
+                testCase -> Assertions.assertEquals("never gonna give you up",
+                        SearchQueryNormalizer.DEFAULT.normalize(testCase))
+        );
+    }
+
+    @Test
+    void symbolsAreKept() {
+        Assertions.assertNotEquals(
+                SearchQueryNormalizer.DEFAULT.normalize("c++ tutorial"),
+                SearchQueryNormalizer.DEFAULT.normalize("c tutorial"));
+        Assertions.assertNotEquals(
+                SearchQueryNormalizer.DEFAULT.normalize("c# tutorial"),
+                SearchQueryNormalizer.DEFAULT.normalize("c tutorial"));
+        Assertions.assertEquals("ac/dc r&b 100%", SearchQueryNormalizer.DEFAULT.normalize("AC/DC, R&B: 100%!"));
+    }
+
+    @Test
+    void tokenSorting() {
+        SearchQueryNormalizer sorting = new SearchQueryNormalizer(true);
+        Assertions.assertEquals(sorting.normalize("Rick Astley - Never Gonna Give You Up"),
+                sorting.normalize("never gonna give you up rick astley"));
+        Assertions.assertNotEquals(SearchQueryNormalizer.DEFAULT.normalize("rick astley never gonna give you up"),
+                SearchQueryNormalizer.DEFAULT.normalize("never gonna give you up rick astley"));
+    }
+
+    @Test
+    void blankQuery() {
+        Assertions.assertEquals("", SearchQueryNormalizer.DEFAULT.normalize(" \t "));
+        Assertions.assertEquals("", new SearchQueryNormalizer(true).normalize(""));
+    }
+}